@@ -1,6 +1,11 @@
 plugins {
     id("java-library-convention")
     `maven-publish`
+    alias(libs.plugins.jmh)
+}
+
+jmh {
+    jmhVersion = libs.versions.jmh.get()
 }
 
 publishing {
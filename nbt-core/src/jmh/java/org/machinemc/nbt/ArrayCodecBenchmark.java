@@ -0,0 +1,110 @@
+package org.machinemc.nbt;
+
+import org.machinemc.nbt.io.NBTInputStream;
+import org.machinemc.nbt.io.NBTOutputStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArrayCodecBenchmark {
+
+    @Param({"256", "4096"})
+    private int length;
+
+    private int[] ints;
+    private long[] longs;
+    private byte[] encodedInts;
+    private byte[] encodedLongs;
+    private ByteArrayOutputStream output;
+    private NBTOutputStream stream;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(length);
+        ints = random.ints(length).toArray();
+        longs = random.longs(length).toArray();
+        output = new ByteArrayOutputStream(length * Long.BYTES + Integer.BYTES);
+        stream = new NBTOutputStream(output, false);
+        stream.writeIntArray(ints);
+        stream.flush();
+        encodedInts = output.toByteArray();
+        output.reset();
+        stream.writeLongArray(longs);
+        stream.flush();
+        encodedLongs = output.toByteArray();
+    }
+
+    @Benchmark
+    public int[] readIntArrayLoop() throws IOException {
+        NBTInputStream in = new NBTInputStream(encodedInts);
+        int[] array = new int[in.readIntValue()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = in.readIntValue();
+        return array;
+    }
+
+    @Benchmark
+    public int[] readIntArrayBulk() throws IOException {
+        return new NBTInputStream(encodedInts).readIntArrayValue();
+    }
+
+    @Benchmark
+    public long[] readLongArrayLoop() throws IOException {
+        NBTInputStream in = new NBTInputStream(encodedLongs);
+        long[] array = new long[in.readIntValue()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = in.readLongValue();
+        return array;
+    }
+
+    @Benchmark
+    public long[] readLongArrayBulk() throws IOException {
+        return new NBTInputStream(encodedLongs).readLongArrayValue();
+    }
+
+    @Benchmark
+    public int writeIntArrayLoop() throws IOException {
+        output.reset();
+        stream.writeInt(ints.length);
+        for (int value : ints)
+            stream.writeInt(value);
+        stream.flush();
+        return output.size();
+    }
+
+    @Benchmark
+    public int writeIntArrayBulk() throws IOException {
+        output.reset();
+        stream.writeIntArray(ints);
+        stream.flush();
+        return output.size();
+    }
+
+    @Benchmark
+    public int writeLongArrayLoop() throws IOException {
+        output.reset();
+        stream.writeInt(longs.length);
+        for (long value : longs)
+            stream.writeLong(value);
+        stream.flush();
+        return output.size();
+    }
+
+    @Benchmark
+    public int writeLongArrayBulk() throws IOException {
+        output.reset();
+        stream.writeLongArray(longs);
+        stream.flush();
+        return output.size();
+    }
+
+}
@@ -0,0 +1,443 @@
+package org.machinemc.nbt;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.machinemc.nbt.exceptions.NBTException;
+import org.machinemc.nbt.io.NBTOutputStream;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+
+// entries of a compound, the keys are kept in a shape shared with other compounds
+// that have the same keys and the values in a flat array in insertion order;
+// compounds without a shape switch to a HashMap
+final class CompactMap extends AbstractMap<String, NBT<?>> {
+
+    private static final NBT<?>[] EMPTY_VALUES = new NBT<?>[0];
+
+    private Shape shape = Shape.EMPTY;
+    // values in the order of the keys of the shape, may be longer than the shape
+    private NBT<?>[] values;
+    // numeric values are kept as raw bits with the ordinal of their tag, their slot in values is null
+    private long @Nullable [] bits;
+    private byte @Nullable [] tags;
+    private int size;
+    // replaces the shape and values once the compound cannot be represented by a shape
+    private @Nullable HashMap<String, NBT<?>> hashed;
+
+    CompactMap(int expectedSize) {
+        if (expectedSize > Shape.MAX_KEYS) {
+            values = EMPTY_VALUES;
+            hashed = HashMap.newHashMap(expectedSize);
+        } else {
+            values = expectedSize == 0 ? EMPTY_VALUES : new NBT<?>[expectedSize];
+        }
+    }
+
+    @Override
+    public int size() {
+        return hashed != null ? hashed.size() : size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (hashed != null) return hashed.containsKey(key);
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        if (hashed != null) return hashed.containsValue(value);
+        for (int i = 0; i < size; i++) {
+            if (valueAt(i).equals(value)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public NBT<?> get(Object key) {
+        if (hashed != null) return hashed.get(key);
+        int index = indexOf(key);
+        return index >= 0 ? valueAt(index) : null;
+    }
+
+    @Override
+    public NBT<?> put(String key, NBT<?> value) {
+        NBT<?> previous = get(key);
+        set(key, value);
+        return previous;
+    }
+
+    // put without creating the previous value, only a previous value that is not kept as raw bits is returned
+    @Nullable NBT<?> set(String key, NBT<?> value) {
+        if (hashed != null) return hashed.put(key, value);
+        int index = slot(key);
+        if (index < 0) return hashed.put(key, value);
+        NBT<?> previous = values[index];
+        // exact classes only, subclasses may hold more than the value
+        Class<?> type = value.getClass();
+        if (type == NBTByte.class) storeBits(index, NBT.Tag.BYTE, ((NBTByte) value).revert());
+        else if (type == NBTShort.class) storeBits(index, NBT.Tag.SHORT, ((NBTShort) value).revert());
+        else if (type == NBTInt.class) storeBits(index, NBT.Tag.INT, ((NBTInt) value).revert());
+        else if (type == NBTLong.class) storeBits(index, NBT.Tag.LONG, ((NBTLong) value).revert());
+        else if (type == NBTFloat.class) storeBits(index, NBT.Tag.FLOAT, Float.floatToRawIntBits(((NBTFloat) value).revert()));
+        else if (type == NBTDouble.class) storeBits(index, NBT.Tag.DOUBLE, Double.doubleToRawLongBits(((NBTDouble) value).revert()));
+        else values[index] = value;
+        return previous;
+    }
+
+    // see set
+    @Nullable NBT<?> setBits(String key, NBT.Tag tag, long bits) {
+        if (hashed != null) return hashed.put(key, box(tag, bits));
+        int index = slot(key);
+        if (index < 0) return hashed.put(key, box(tag, bits));
+        NBT<?> previous = values[index];
+        storeBits(index, tag, bits);
+        return previous;
+    }
+
+    void replaceValues(UnaryOperator<NBT<?>> function) {
+        if (hashed != null) {
+            hashed.replaceAll((key, value) -> function.apply(value));
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            if (values[i] != null) values[i] = function.apply(values[i]);
+        }
+    }
+
+    // raw bits of the numeric value of the key, see setBits
+    long getBits(String key, NBT.Tag tag) {
+        int index = hashed != null ? -1 : indexOf(key);
+        if (index >= 0 && values[index] == null) {
+            assert bits != null && tags != null;
+            if (tags[index] != tag.ordinal()) throw mismatch(key, tag, NBT.Tag.fromID(tags[index]));
+            return bits[index];
+        }
+        return bits(key, tag, index >= 0 ? values[index] : get(key));
+    }
+
+    static long bits(String key, NBT.Tag tag, @Nullable NBT<?> value) {
+        if (value == null) throw new NBTException("There is no value for '" + key + "'");
+        if (value.tag() != tag) throw mismatch(key, tag, value.tag());
+        return switch (value) {
+            case NBTByte nbt -> nbt.revert();
+            case NBTShort nbt -> nbt.revert();
+            case NBTInt nbt -> nbt.revert();
+            case NBTLong nbt -> nbt.revert();
+            case NBTFloat nbt -> Float.floatToRawIntBits(nbt.revert());
+            case NBTDouble nbt -> Double.doubleToRawLongBits(nbt.revert());
+            default -> throw mismatch(key, tag, value.tag());
+        };
+    }
+
+    @Override
+    public NBT<?> remove(Object key) {
+        if (hashed != null) return hashed.remove(key);
+        int index = indexOf(key);
+        if (index < 0) return null;
+        NBT<?> previous = valueAt(index);
+        removeAt(index);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        hashed = null;
+        shape = Shape.EMPTY;
+        values = EMPTY_VALUES;
+        bits = null;
+        tags = null;
+        size = 0;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super NBT<?>> action) {
+        if (hashed != null) {
+            hashed.forEach(action);
+            return;
+        }
+        for (int i = 0; i < size; i++)
+            action.accept(shape.keyAt(i), valueAt(i));
+    }
+
+    @Override
+    public @NotNull Set<String> keySet() {
+        if (hashed != null) return hashed.keySet();
+        return new AbstractSet<>() {
+            @Override
+            public @NotNull Iterator<String> iterator() {
+                return new ArrayIterator<>() {
+                    @Override
+                    String element(int index) {
+                        return shape.keyAt(index);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public @NotNull Collection<NBT<?>> values() {
+        if (hashed != null) return hashed.values();
+        return new AbstractCollection<>() {
+            @Override
+            public @NotNull Iterator<NBT<?>> iterator() {
+                return new ArrayIterator<>() {
+                    @Override
+                    NBT<?> element(int index) {
+                        return valueAt(index);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public @NotNull Set<Entry<String, NBT<?>>> entrySet() {
+        if (hashed != null) return hashed.entrySet();
+        return new AbstractSet<>() {
+            @Override
+            public @NotNull Iterator<Entry<String, NBT<?>>> iterator() {
+                return new ArrayIterator<>() {
+                    @Override
+                    Entry<String, NBT<?>> element(int index) {
+                        return new SimpleEntry<>(shape.keyAt(index), valueAt(index)) {
+                            @Override
+                            public NBT<?> setValue(NBT<?> value) {
+                                set(getKey(), value);
+                                return super.setValue(value);
+                            }
+                        };
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public int hashCode() {
+        if (hashed != null) return hashed.hashCode();
+        int hash = 0;
+        for (int i = 0; i < size; i++)
+            hash += shape.keyAt(i).hashCode() ^ valueAt(i).hashCode();
+        return hash;
+    }
+
+    // number of entries stored in the flat arrays, -1 if the map is hashed
+    int compactSize() {
+        return hashed != null ? -1 : size;
+    }
+
+    String keyAt(int index) {
+        return shape.keyAt(index);
+    }
+
+    // numeric values are boxed for each call
+    NBT<?> valueAt(int index) {
+        NBT<?> value = values[index];
+        if (value != null) return value;
+        assert bits != null && tags != null;
+        return box(NBT.Tag.fromID(tags[index]), bits[index]);
+    }
+
+    // copy of the map with copies of its compounds, lists and arrays
+    CompactMap copy() {
+        CompactMap copy = new CompactMap(0);
+        if (hashed != null) {
+            HashMap<String, NBT<?>> values = HashMap.newHashMap(hashed.size());
+            hashed.forEach((key, value) -> values.put(key, copy(value)));
+            copy.hashed = values;
+            return copy;
+        }
+        copy.shape = shape;
+        copy.size = size;
+        copy.values = size == 0 ? EMPTY_VALUES : Arrays.copyOf(values, size);
+        if (bits != null) {
+            assert tags != null;
+            copy.bits = Arrays.copyOf(bits, size);
+            copy.tags = Arrays.copyOf(tags, size);
+        }
+        for (int i = 0; i < size; i++) {
+            NBT<?> value = values[i];
+            if (value != null) copy.values[i] = copy(value);
+        }
+        return copy;
+    }
+
+    NBT.Tag tagAt(int index) {
+        NBT<?> value = values[index];
+        if (value != null) return value.tag();
+        assert tags != null;
+        return NBT.Tag.fromID(tags[index]);
+    }
+
+    int serializedSizeAt(int index) {
+        NBT<?> value = values[index];
+        if (value != null) return value.serializedSize();
+        assert tags != null;
+        return switch (NBT.Tag.fromID(tags[index])) {
+            case BYTE -> Byte.BYTES;
+            case SHORT -> Short.BYTES;
+            case INT, FLOAT -> Integer.BYTES;
+            default -> Long.BYTES;
+        };
+    }
+
+    long structuralHashAt(int index) {
+        NBT<?> value = values[index];
+        if (value != null) return StructuralHash.of(value);
+        assert bits != null && tags != null;
+        return StructuralHash.scalar(NBT.Tag.fromID(tags[index]), bits[index]);
+    }
+
+    void writeValueAt(int index, NBTOutputStream stream) throws IOException {
+        NBT<?> value = values[index];
+        if (value != null) {
+            value.write(stream);
+            return;
+        }
+        assert bits != null && tags != null;
+        long bits = this.bits[index];
+        switch (NBT.Tag.fromID(tags[index])) {
+            case BYTE -> stream.writeByte((byte) bits);
+            case SHORT -> stream.writeShort((short) bits);
+            case INT -> stream.writeInt((int) bits);
+            case FLOAT -> stream.writeFloat(Float.intBitsToFloat((int) bits));
+            case DOUBLE -> stream.writeDouble(Double.longBitsToDouble(bits));
+            default -> stream.writeLong(bits);
+        }
+    }
+
+    private int indexOf(Object key) {
+        return shape.indexOf(key);
+    }
+
+    // index of the key, which is appended if it is missing; -1 if the map had to be hashed for it
+    private int slot(String key) {
+        int index = indexOf(key);
+        if (index >= 0) return index;
+        Shape next = size < Shape.MAX_KEYS ? shape.with(key) : null;
+        if (next == null) {
+            rehash();
+            return -1;
+        }
+        if (size == values.length) {
+            int capacity = Math.min(Shape.MAX_KEYS, Math.max(4, size * 2));
+            values = Arrays.copyOf(values, capacity);
+            if (bits != null) {
+                bits = Arrays.copyOf(bits, capacity);
+                tags = Arrays.copyOf(tags, capacity);
+            }
+        }
+        shape = next;
+        return size++;
+    }
+
+    private void storeBits(int index, NBT.Tag tag, long value) {
+        if (bits == null) {
+            bits = new long[values.length];
+            tags = new byte[values.length];
+        }
+        assert tags != null;
+        values[index] = null;
+        bits[index] = value;
+        tags[index] = (byte) tag.ordinal();
+    }
+
+    private void removeAt(int index) {
+        Shape next = shape.without(index);
+        int moved = size - index - 1;
+        System.arraycopy(values, index + 1, values, index, moved);
+        if (bits != null) {
+            assert tags != null;
+            System.arraycopy(bits, index + 1, bits, index, moved);
+            System.arraycopy(tags, index + 1, tags, index, moved);
+        }
+        values[--size] = null;
+        shape = next;
+    }
+
+    private void rehash() {
+        HashMap<String, NBT<?>> hashed = HashMap.newHashMap(Math.max(size, Shape.MAX_KEYS) + 1);
+        for (int i = 0; i < size; i++)
+            hashed.put(shape.keyAt(i), valueAt(i));
+        clear();
+        this.hashed = hashed;
+    }
+
+    // strings are immutable and are shared
+    private static NBT<?> copy(NBT<?> value) {
+        if (value instanceof NBTString) return value;
+        NBT<?> copy = value.clone();
+        Holders.hold(copy);
+        return copy;
+    }
+
+    private static NBT<?> box(NBT.Tag tag, long bits) {
+        return switch (tag) {
+            case BYTE -> NBTByte.valueOf((byte) bits);
+            case SHORT -> NBTShort.valueOf((short) bits);
+            case INT -> NBTInt.valueOf((int) bits);
+            case LONG -> new NBTLong(bits);
+            case FLOAT -> NBTFloat.valueOf(Float.intBitsToFloat((int) bits));
+            case DOUBLE -> NBTDouble.valueOf(Double.longBitsToDouble(bits));
+            default -> throw new IllegalArgumentException(tag.getTypeName() + " is not numeric");
+        };
+    }
+
+    private static NBTException mismatch(String key, NBT.Tag expected, NBT.Tag actual) {
+        return new NBTException("Expected " + expected.getTypeName() + " for '" + key + "', but found " + actual.getTypeName());
+    }
+
+    private abstract class ArrayIterator<E> implements Iterator<E> {
+
+        private int index;
+        private boolean removable;
+
+        abstract E element(int index);
+
+        @Override
+        public boolean hasNext() {
+            return index < size;
+        }
+
+        @Override
+        public E next() {
+            if (index >= size) throw new NoSuchElementException();
+            removable = true;
+            return element(index++);
+        }
+
+        @Override
+        public void remove() {
+            if (!removable) throw new IllegalStateException();
+            removable = false;
+            removeAt(--index);
+        }
+
+    }
+
+}
@@ -0,0 +1,55 @@
+package org.machinemc.nbt;
+
+import java.util.Map;
+
+// the decoders of org.machinemc.nbt.io have no access to the package-private factories of this package,
+// which take over the arrays they are given without a copy and create lazy compounds; not meant to be
+// used by anything else, the arrays must not be touched by the caller afterwards
+public final class DecoderAccess {
+
+    private DecoderAccess() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static NBTByteArray byteArray(byte[] value) {
+        return NBTByteArray.wrap(value);
+    }
+
+    public static NBTIntArray intArray(int[] value) {
+        return NBTIntArray.wrap(value);
+    }
+
+    public static NBTLongArray longArray(long[] value) {
+        return NBTLongArray.wrap(value);
+    }
+
+    public static NBTList byteList(byte[] values) {
+        return NBTList.wrapBytes(values);
+    }
+
+    public static NBTList shortList(short[] values) {
+        return NBTList.wrapShorts(values);
+    }
+
+    public static NBTList intList(int[] values) {
+        return NBTList.wrapInts(values);
+    }
+
+    public static NBTList longList(long[] values) {
+        return NBTList.wrapLongs(values);
+    }
+
+    public static NBTList floatList(float[] values) {
+        return NBTList.wrapFloats(values);
+    }
+
+    public static NBTList doubleList(double[] values) {
+        return NBTList.wrapDoubles(values);
+    }
+
+    public static LazyNBTCompound lazyCompound(LazyNBTCompound.Source source, int offset, int length,
+                                               Map<String, LazyNBTCompound.Slot> slots) {
+        return new LazyNBTCompound(source, offset, length, slots);
+    }
+
+}
@@ -0,0 +1,46 @@
+package org.machinemc.nbt;
+
+import org.jetbrains.annotations.Nullable;
+import org.machinemc.nbt.io.NBTOutputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// encoded payload of a compound or list, valid as long as neither the container
+// nor any compound, list or array inside of it has been modified
+final class EncodedCache {
+
+    private final byte[] bytes;
+    private final ModificationStamp stamp;
+
+    private EncodedCache(byte[] bytes, ModificationStamp stamp) {
+        this.bytes = bytes;
+        this.stamp = stamp;
+    }
+
+    // null if the container holds values whose modifications cannot be tracked
+    static @Nullable EncodedCache encode(NBT<?> container) throws IOException {
+        ModificationStamp stamp = ModificationStamp.of(container);
+        if (stamp == null) return null;
+
+        byte[] bytes = new byte[container.serializedSize()];
+        NBTOutputStream stream = new NBTOutputStream(ByteBuffer.wrap(bytes));
+        if (container instanceof NBTCompound compound) compound.writePayload(stream);
+        else ((NBTList) container).writePayload(stream);
+        stream.flush();
+        return new EncodedCache(bytes, stamp);
+    }
+
+    boolean isValid() {
+        return stamp.isValid();
+    }
+
+    int size() {
+        return bytes.length;
+    }
+
+    void write(NBTOutputStream stream) throws IOException {
+        stream.write(bytes);
+    }
+
+}
@@ -0,0 +1,60 @@
+package org.machinemc.nbt;
+
+import org.jetbrains.annotations.Nullable;
+
+// number of compounds and lists that hold a compound, list or array; values have no links to the
+// containers they are in, so freezing a container uses it to tell the children it may freeze in place
+// from the ones that other containers hold as well, see freeze
+final class Holders {
+
+    private Holders() {
+        throw new UnsupportedOperationException();
+    }
+
+    static void hold(@Nullable NBT<?> value) {
+        switch (value) {
+            case NBTCompound compound -> compound.holders++;
+            case NBTList list -> list.holders++;
+            case NBTByteArray array -> array.holders++;
+            case NBTIntArray array -> array.holders++;
+            case NBTLongArray array -> array.holders++;
+            case null, default -> {
+            }
+        }
+    }
+
+    static void release(@Nullable NBT<?> value) {
+        switch (value) {
+            case NBTCompound compound -> compound.holders--;
+            case NBTList list -> list.holders--;
+            case NBTByteArray array -> array.holders--;
+            case NBTIntArray array -> array.holders--;
+            case NBTLongArray array -> array.holders--;
+            case null, default -> {
+            }
+        }
+    }
+
+    // child of a container that is being frozen; children that other containers hold as well are replaced
+    // with frozen copies, so they stay mutable for them, views of mutable values return copies themselves
+    static NBT<?> freeze(NBT<?> value) {
+        NBT<?> frozen = isShared(value) ? PersistentNBTCompound.frozenCopy(value) : value.freeze();
+        if (frozen != value) {
+            release(value);
+            hold(frozen);
+        }
+        return frozen;
+    }
+
+    private static boolean isShared(NBT<?> value) {
+        return switch (value) {
+            case NBTCompound compound -> !compound.isFrozen() && compound.holders > 1;
+            case NBTList list -> !list.isFrozen() && list.holders > 1;
+            case NBTByteArray array -> !array.isFrozen() && array.holders > 1;
+            case NBTIntArray array -> !array.isFrozen() && array.holders > 1;
+            case NBTLongArray array -> !array.isFrozen() && array.holders > 1;
+            default -> false;
+        };
+    }
+
+}
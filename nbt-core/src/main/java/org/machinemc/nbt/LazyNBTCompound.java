@@ -0,0 +1,221 @@
+package org.machinemc.nbt;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.machinemc.nbt.exceptions.NBTException;
+import org.machinemc.nbt.io.NBTOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+public class LazyNBTCompound extends NBTCompound {
+
+    private final Source source;
+    private final int offset;
+    private final int length;
+    // entries that have not been decoded yet
+    private final Map<String, Slot> pending;
+    // whether the original encoded bytes still represent the whole compound
+    private boolean pristine = true;
+
+    LazyNBTCompound(Source source, int offset, int length, Map<String, Slot> slots) {
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+        this.pending = new HashMap<>(slots);
+    }
+
+    @Override
+    public void write(NBTOutputStream stream) throws IOException {
+        // the encoded entries are in their original order
+        if (stream.isCanonical()) {
+            stream.writeCompound(this);
+            return;
+        }
+        if (pristine) {
+            source.transfer(offset, length, stream);
+            return;
+        }
+        for (Map.Entry<String, NBT<?>> entry : super.entrySet()) {
+            stream.writeTag(entry.getValue().tag());
+            stream.writeString(entry.getKey());
+            stream.writeNBT(entry.getValue());
+        }
+        for (Map.Entry<String, Slot> entry : pending.entrySet()) {
+            Slot slot = entry.getValue();
+            stream.writeTag(slot.tag());
+            stream.writeString(entry.getKey());
+            source.transfer(slot.offset(), slot.length(), stream);
+        }
+        stream.writeEnd();
+    }
+
+    @Override
+    public int serializedSize() {
+        if (pristine) return length;
+        if (isFrozen()) return super.serializedSize();
+        int size = Byte.BYTES;
+        for (Map.Entry<String, NBT<?>> entry : super.entrySet())
+            size = Math.addExact(size, entrySize(entry.getKey(), entry.getValue().serializedSize()));
+        for (Map.Entry<String, Slot> entry : pending.entrySet())
+            size = Math.addExact(size, entrySize(entry.getKey(), entry.getValue().length()));
+        return size;
+    }
+
+    @Override
+    public NBTCompound freeze(boolean cacheEncoding) {
+        decodeAll();
+        return super.freeze(cacheEncoding);
+    }
+
+    @Override
+    public NBTCompound clone() {
+        decodeAll();
+        return super.clone();
+    }
+
+    @Override
+    public int size() {
+        return super.size() + pending.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return pending.isEmpty() && super.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        if (key == null) return false;
+        return pending.containsKey(key) || super.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        decodeAll();
+        return super.containsValue(value);
+    }
+
+    @Override
+    public boolean containsTag(Tag tag) {
+        for (Slot slot : pending.values()) {
+            if (slot.tag() == tag) return true;
+        }
+        return super.containsTag(tag);
+    }
+
+    @Override
+    public <T extends NBT<?>> T getNBT(String key) {
+        if (key != null && !pending.isEmpty()) decode(key);
+        return super.getNBT(key);
+    }
+
+    @Override
+    public void set(String key, @Nullable Object value) {
+        if (key != null) pending.remove(key);
+        pristine = false;
+        super.set(key, value);
+    }
+
+    @Override
+    long scalarBits(String key, Tag tag) {
+        if (key != null && !pending.isEmpty()) decode(key);
+        return super.scalarBits(key, tag);
+    }
+
+    @Override
+    void setScalar(String key, Tag tag, long bits) {
+        if (key != null) pending.remove(key);
+        pristine = false;
+        super.setScalar(key, tag, bits);
+    }
+
+    @Override
+    public NBT<?> remove(String key) {
+        if (key != null) decode(key);
+        NBT<?> removed = super.remove(key);
+        if (removed != null) pristine = false;
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        pending.clear();
+        pristine = false;
+        super.clear();
+    }
+
+    @Override
+    public @NotNull Set<String> keySet() {
+        decodeAll();
+        return super.keySet();
+    }
+
+    @Override
+    public @NotNull Collection<NBT<?>> values() {
+        decodeAll();
+        return super.values();
+    }
+
+    @Override
+    public @NotNull Set<Map.Entry<String, NBT<?>>> entrySet() {
+        decodeAll();
+        return super.entrySet();
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super NBT<?>> action) {
+        decodeAll();
+        super.forEach(action);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        decodeAll();
+        return super.equals(obj);
+    }
+
+    @Override
+    public int hashCode() {
+        decodeAll();
+        return super.hashCode();
+    }
+
+    @Override
+    long structuralHash(boolean cache) {
+        decodeAll();
+        return super.structuralHash(cache);
+    }
+
+    private void decode(String key) {
+        Slot slot = pending.remove(key);
+        if (slot == null) return;
+        // the decoded value may be mutated by the caller
+        pristine = false;
+        try {
+            super.set(key, source.decode(slot.tag(), slot.offset(), slot.length()));
+        } catch (IOException exception) {
+            throw new NBTException("Failed to decode value of '" + key + "'", exception);
+        }
+    }
+
+    private void decodeAll() {
+        if (pending.isEmpty()) return;
+        for (String key : new ArrayList<>(pending.keySet()))
+            decode(key);
+    }
+
+    public interface Source {
+
+        NBT<?> decode(Tag tag, int offset, int length) throws IOException;
+
+        void transfer(int offset, int length, OutputStream out) throws IOException;
+
+    }
+
+    public record Slot(Tag tag, int offset, int length) {
+    }
+
+}
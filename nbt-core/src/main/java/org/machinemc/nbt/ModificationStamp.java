@@ -0,0 +1,99 @@
+package org.machinemc.nbt;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+// modification counts of a compound or list and every compound, list and array inside of it,
+// valid as long as none of them has been modified; frozen values are left out as they cannot be modified
+//
+// arrays only change through their set methods, as they copy the arrays they are created with
+final class ModificationStamp {
+
+    private NBT<?>[] nodes = new NBT<?>[4];
+    private int[] modCounts = new int[4];
+    private int size;
+
+    private ModificationStamp() {
+    }
+
+    // null if the container holds values whose modifications cannot be tracked
+    static @Nullable ModificationStamp of(NBT<?> container) {
+        ModificationStamp stamp = new ModificationStamp();
+        return collect(container, stamp) ? stamp : null;
+    }
+
+    boolean isValid() {
+        for (int i = 0; i < size; i++) {
+            if (modCount(nodes[i]) != modCounts[i]) return false;
+        }
+        return true;
+    }
+
+    private void add(NBT<?> node) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            modCounts = Arrays.copyOf(modCounts, size * 2);
+        }
+        nodes[size] = node;
+        modCounts[size++] = modCount(node);
+    }
+
+    private static boolean collect(NBT<?> nbt, ModificationStamp stamp) {
+        switch (nbt) {
+            case NBTCompound compound when compound.isFrozen() -> {
+            }
+            case NBTCompound compound -> {
+                stamp.add(compound);
+                for (NBT<?> value : compound.loadedValues()) {
+                    if (!collect(value, stamp)) return false;
+                }
+            }
+            case NBTList list when list.isFrozen() -> {
+            }
+            case NBTList list -> {
+                stamp.add(list);
+                // scalar elements cannot be modified
+                if (!isContainer(list.getElementType())) return true;
+                for (NBT<?> element : list) {
+                    if (!collect(element, stamp)) return false;
+                }
+            }
+            case NBTByteArray array -> {
+                if (!array.isFrozen()) stamp.add(array);
+            }
+            case NBTIntArray array -> {
+                if (!array.isFrozen()) stamp.add(array);
+            }
+            case NBTLongArray array -> {
+                if (!array.isFrozen()) stamp.add(array);
+            }
+            // e.g. unmodifiable views of arrays, which do not expose the state of the viewed array
+            case NBTArray<?, ?> ignored -> {
+                return false;
+            }
+            default -> {
+            }
+        }
+        return true;
+    }
+
+    private static boolean isContainer(NBT.Tag tag) {
+        return switch (tag) {
+            case COMPOUND, LIST, BYTE_ARRAY, INT_ARRAY, LONG_ARRAY -> true;
+            default -> false;
+        };
+    }
+
+    private static int modCount(NBT<?> nbt) {
+        return switch (nbt) {
+            case NBTCompound compound -> compound.modCount();
+            case NBTList list -> list.modCount();
+            case NBTByteArray array -> array.modCount;
+            case NBTIntArray array -> array.modCount;
+            case NBTLongArray array -> array.modCount;
+            default -> 0;
+        };
+    }
+
+}
@@ -1,5 +1,8 @@
 package org.machinemc.nbt;
 
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.machinemc.nbt.exceptions.NBTException;
 import org.machinemc.nbt.io.NBTInputStream;
 import org.machinemc.nbt.io.NBTOutputStream;
 import org.machinemc.nbt.visitor.NBTVisitor;
@@ -7,6 +10,7 @@ import org.machinemc.nbt.visitor.NBTVisitor;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -23,12 +27,45 @@ public interface NBT<T> {
 
     NBT<T> clone();
 
+    // makes the value deeply immutable, values without mutable state are returned as they are
+    default NBT<T> freeze() {
+        return this;
+    }
+
     default void write(OutputStream stream) throws IOException {
-        write(stream instanceof NBTOutputStream ? (NBTOutputStream) stream : new NBTOutputStream(stream, false));
+        if (stream instanceof NBTOutputStream nbtStream) {
+            write(nbtStream);
+            return;
+        }
+        NBTOutputStream nbtStream = new NBTOutputStream(stream, false);
+        write(nbtStream);
+        nbtStream.flush();
     }
 
     void write(NBTOutputStream stream) throws IOException;
 
+    // exact number of bytes written by write(NBTOutputStream)
+    default int serializedSize() {
+        int[] size = {0};
+        OutputStream counter = new OutputStream() {
+            @Override
+            public void write(int b) {
+                size[0]++;
+            }
+
+            @Override
+            public void write(byte @NotNull [] b, int off, int len) {
+                size[0] += len;
+            }
+        };
+        try {
+            write(counter);
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        return size[0];
+    }
+
     default boolean softEquals(Object object) {
         if (this == object) return true;
         if (equals(object)) return true;
@@ -38,12 +75,9 @@ public interface NBT<T> {
     static NBT<?> convert(Object object) {
         if (object instanceof NBT<?> nbt) return nbt;
         if (object == null) return NBTEnd.INSTANCE;
-        if (object instanceof Boolean bool) return new NBTByte(bool);
-        for (Tag tag : Tag.values()) {
-            NBT<?> nbt = tag.make(object);
-            if (nbt != null) return nbt;
-        }
-        return null;
+        if (object instanceof Boolean bool) return NBTByte.valueOf(bool);
+        Tag tag = Tag.of(object.getClass());
+        return tag != null ? tag.make.apply(object) : null;
     }
 
     static <T> T revert(NBT<T> nbt) {
@@ -55,12 +89,12 @@ public interface NBT<T> {
         END(Void.class, object -> NBTEnd.INSTANCE, stream -> {
             throw new UnsupportedOperationException("Cannot read Tag_END NBT");
         }),
-        BYTE(Byte.class, NBTByte::new, NBTInputStream::readByte),
-        SHORT(Short.class, NBTShort::new, NBTInputStream::readShort),
-        INT(Integer.class, NBTInt::new, NBTInputStream::readInt),
+        BYTE(Byte.class, NBTByte::valueOf, NBTInputStream::readByte),
+        SHORT(Short.class, NBTShort::valueOf, NBTInputStream::readShort),
+        INT(Integer.class, NBTInt::valueOf, NBTInputStream::readInt),
         LONG(Long.class, NBTLong::new, NBTInputStream::readLong),
-        FLOAT(Float.class, NBTFloat::new, NBTInputStream::readFloat),
-        DOUBLE(Double.class, NBTDouble::new, NBTInputStream::readDouble),
+        FLOAT(Float.class, NBTFloat::valueOf, NBTInputStream::readFloat),
+        DOUBLE(Double.class, NBTDouble::valueOf, NBTInputStream::readDouble),
         BYTE_ARRAY(byte[].class, NBTByteArray::new, NBTInputStream::readByteArray),
         STRING(String.class, NBTString::new, NBTInputStream::readString),
         LIST(List.class, NBTList::new, NBTInputStream::readList),
@@ -68,6 +102,18 @@ public interface NBT<T> {
         INT_ARRAY(int[].class, NBTIntArray::new, NBTInputStream::readIntArray),
         LONG_ARRAY(long[].class, NBTLongArray::new, NBTInputStream::readLongArray);
 
+        private static final Tag[] VALUES = values();
+        // tag of the values that are made from instances of a class, END if there is none
+        private static final ClassValue<Tag> BY_TYPE = new ClassValue<>() {
+            @Override
+            protected Tag computeValue(@NotNull Class<?> type) {
+                for (Tag tag : VALUES) {
+                    if (tag != END && tag.type.isAssignableFrom(type)) return tag;
+                }
+                return END;
+            }
+        };
+
         private final Class<?> type;
         private final Function<Object, NBT<?>> make;
         private final Reader reader;
@@ -92,9 +138,23 @@ public interface NBT<T> {
             return make.apply(object);
         }
 
+        public static Tag fromID(int id) {
+            if (id < 0 || id >= VALUES.length) throw new NBTException("Unknown tag ID " + id);
+            return VALUES[id];
+        }
+
+        // tag of the values that are made from instances of the type, null if they cannot be converted
+        static @Nullable Tag of(Class<?> type) {
+            Tag tag = BY_TYPE.get(type);
+            return tag != END ? tag : null;
+        }
+
         public NBT<?> read(InputStream stream) throws IOException {
-            NBTInputStream nbtStream = stream instanceof NBTInputStream ? (NBTInputStream) stream : new NBTInputStream(stream);
-            return reader.read(nbtStream);
+            if (stream instanceof NBTInputStream nbtStream) return reader.read(nbtStream);
+            NBTInputStream nbtStream = NBTCompound.readingAhead(stream);
+            NBT<?> nbt = reader.read(nbtStream);
+            nbtStream.release();
+            return nbt;
         }
 
         @FunctionalInterface
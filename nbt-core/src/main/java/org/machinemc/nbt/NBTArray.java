@@ -49,7 +49,7 @@ public interface NBTArray<T, E> extends NBT<T>, Iterable<E> {
 
             @Override
             public NBTArray<T, E> clone() {
-                return NBTArray.this.unmodifiableView().clone().unmodifiableView();
+                return NBTArray.this.clone().unmodifiableView();
             }
 
             @Override
@@ -72,6 +72,17 @@ public interface NBTArray<T, E> extends NBT<T>, Iterable<E> {
                 NBTArray.this.write(stream);
             }
 
+            @Override
+            public int serializedSize() {
+                return NBTArray.this.serializedSize();
+            }
+
+            // the viewed array stays mutable for its owner, a frozen copy of it is returned
+            @Override
+            public NBT<T> freeze() {
+                return NBTArray.this.clone().freeze();
+            }
+
             @Override
             public @UnmodifiableView NBTArray<T, E> unmodifiableView() {
                 return this;
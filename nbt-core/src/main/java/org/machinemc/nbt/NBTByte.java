@@ -8,6 +8,14 @@ import java.io.IOException;
 
 public class NBTByte implements NBT<Byte> {
 
+    // shared instances of every value, see valueOf
+    private static final NBTByte[] CACHE = new NBTByte[256];
+
+    static {
+        for (int i = 0; i < CACHE.length; i++)
+            CACHE[i] = new NBTByte((byte) (i + Byte.MIN_VALUE));
+    }
+
     private final byte value;
 
     public NBTByte(Number number) {
@@ -22,6 +30,14 @@ public class NBTByte implements NBT<Byte> {
         this.value = value;
     }
 
+    public static NBTByte valueOf(byte value) {
+        return CACHE[value - Byte.MIN_VALUE];
+    }
+
+    public static NBTByte valueOf(boolean bool) {
+        return valueOf((byte) (bool ? 1 : 0));
+    }
+
     @Override
     public Tag tag() {
         return Tag.BYTE;
@@ -47,6 +63,11 @@ public class NBTByte implements NBT<Byte> {
         stream.writeByte(value);
     }
 
+    @Override
+    public int serializedSize() {
+        return Byte.BYTES;
+    }
+
     @Override
     public String toString() {
         return new NBTStringVisitor().visitNBT(this);
@@ -6,15 +6,24 @@ import org.jetbrains.annotations.NotNull;
 import org.machinemc.nbt.io.NBTOutputStream;
 
 import java.io.IOException;
+import java.lang.invoke.VarHandle;
 import java.util.Arrays;
 import java.util.Objects;
 
 public class NBTByteArray implements NBTArray<byte[], Byte> {
 
-    private final byte[] bytes;
+    // only assigned while the array is created, see wrap
+    private byte[] bytes;
+    // incremented by set(int, Byte), see EncodedCache
+    transient int modCount;
+    // see Holders
+    transient int holders;
+    // set by freeze, the hash is computed once
+    private transient boolean frozen;
+    private transient int frozenHash;
 
     public NBTByteArray(Byte[] bytes) {
-        this(unbox(bytes));
+        this.bytes = unbox(bytes);
     }
 
     public NBTByteArray(int... ints) {
@@ -24,11 +33,22 @@ public class NBTByteArray implements NBTArray<byte[], Byte> {
     }
 
     public NBTByteArray(int size) {
-       this(new byte[size]);
+       this.bytes = new byte[size];
     }
 
+    // the array is copied, changes to it could not be tracked by cached hashes and encodings
     public NBTByteArray(byte... bytes) {
-        this.bytes = bytes;
+        this.bytes = bytes.clone();
+    }
+
+    private NBTByteArray() {
+    }
+
+    // takes over an array that no one else holds, e.g. one that was just decoded
+    static NBTByteArray wrap(byte[] bytes) {
+        NBTByteArray array = new NBTByteArray();
+        array.bytes = bytes;
+        return array;
     }
 
     @Override
@@ -48,7 +68,8 @@ public class NBTByteArray implements NBTArray<byte[], Byte> {
 
     @Override
     public NBTByteArray clone() {
-        return new NBTByteArray(bytes.clone());
+        if (frozen) return this;
+        return wrap(bytes.clone());
     }
 
     @Override
@@ -56,6 +77,11 @@ public class NBTByteArray implements NBTArray<byte[], Byte> {
         stream.writeByteArray(bytes);
     }
 
+    @Override
+    public int serializedSize() {
+        return Math.addExact(Integer.BYTES, bytes.length);
+    }
+
     @Override
     public int size() {
         return bytes.length;
@@ -68,7 +94,9 @@ public class NBTByteArray implements NBTArray<byte[], Byte> {
 
     @Override
     public void set(int index, @NotNull Byte element) {
+        if (frozen) throw new UnsupportedOperationException("Array is frozen");
         bytes[index] = Objects.requireNonNull(element, "element");
+        modCount++;
     }
 
     @Override
@@ -88,7 +116,20 @@ public class NBTByteArray implements NBTArray<byte[], Byte> {
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(bytes);
+        return frozen ? frozenHash : Arrays.hashCode(bytes);
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    @Override
+    public NBTByteArray freeze() {
+        if (frozen) return this;
+        frozenHash = Arrays.hashCode(bytes);
+        frozen = true;
+        VarHandle.releaseFence();
+        return this;
     }
 
     private static byte[] unbox(Byte[] value) {
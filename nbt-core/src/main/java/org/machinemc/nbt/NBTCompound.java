@@ -4,35 +4,140 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.UnmodifiableView;
 import org.machinemc.nbt.exceptions.NBTException;
+import org.machinemc.nbt.io.ModifiedUTF8;
 import org.machinemc.nbt.io.NBTInputStream;
 import org.machinemc.nbt.io.NBTOutputStream;
 import org.machinemc.nbt.visitor.NBTStringVisitor;
 import org.machinemc.nbt.visitor.NBTVisitor;
 
 import java.io.*;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 public class NBTCompound implements NBT<Map<String, Object>>, Iterable<Map.Entry<String, NBT<?>>> {
 
-    private final Map<String, NBT<?>> map;
-    
+    private final CompactMap map;
+
     private transient Map<String, NBT<?>> mapView;
     private transient NBTCompound unmodifiableView;
 
+    // number of modifications of this compound, see EncodedCache
+    private transient int modCount;
+    // see Holders
+    transient int holders;
+    private transient boolean cacheEncoding;
+    private transient @Nullable EncodedCache encoded;
+    // set by freeze, the hash and size are computed once
+    private transient boolean frozen;
+    private transient int frozenHash;
+    private transient int frozenSize;
+    // see structuralHash
+    private transient StructuralHash.@Nullable Cached cachedHash;
+
     public NBTCompound() {
-        this(new HashMap<>());
+        this(0);
+    }
+
+    public NBTCompound(int initialCapacity) {
+        this.map = new CompactMap(initialCapacity);
+    }
+
+    private NBTCompound(CompactMap map) {
+        this.map = map;
+    }
+
+    // compounds that keep their entries elsewhere, see PersistentNBTCompound
+    NBTCompound(boolean frozen) {
+        this(0);
+        this.frozen = frozen;
     }
 
     public NBTCompound(Map<?, ?> map) {
-        this.map = new HashMap<>();
+        this(map.size());
         map.forEach((key, value) -> set(key + "", value));
     }
 
     @Override
     public void write(NBTOutputStream stream) throws IOException {
-        stream.writeCompound(map);
+        // cached bytes are not written in canonical order
+        if (cacheEncoding && !stream.isCanonical()) {
+            if (encoded == null || !frozen && !encoded.isValid()) encoded = EncodedCache.encode(this);
+            if (encoded != null) {
+                encoded.write(stream);
+                return;
+            }
+        }
+        writePayload(stream);
+    }
+
+    @Override
+    public int serializedSize() {
+        if (frozen) return frozenSize;
+        if (encoded != null && encoded.isValid()) return encoded.size();
+        int size = Byte.BYTES;
+        int compactSize = map.compactSize();
+        for (int i = 0; i < compactSize; i++)
+            size = Math.addExact(size, entrySize(map.keyAt(i), map.serializedSizeAt(i)));
+        if (compactSize < 0) {
+            for (Map.Entry<String, NBT<?>> entry : map.entrySet())
+                size = Math.addExact(size, entrySize(entry.getKey(), entry.getValue().serializedSize()));
+        }
+        return size;
+    }
+
+    // exact number of bytes written by writeRoot(NBTOutputStream, String)
+    public int serializedRootSize(@Nullable String rootName) {
+        int size = Byte.BYTES + serializedSize();
+        if (rootName != null) size = Math.addExact(size, Short.BYTES + ModifiedUTF8.encodedLength(rootName));
+        return size;
+    }
+
+    public boolean isCacheEncoding() {
+        return cacheEncoding;
+    }
+
+    // keeps the encoded payload after a write and copies it on the following writes,
+    // until this compound or any compound, list or array inside of it is modified
+    public void setCacheEncoding(boolean cacheEncoding) {
+        checkFrozen();
+        this.cacheEncoding = cacheEncoding;
+        if (!cacheEncoding) encoded = null;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    @Override
+    public NBTCompound freeze() {
+        return freeze(false);
+    }
+
+    // makes this compound and every compound, list and array inside of it immutable,
+    // a frozen tree can be shared between threads once this returns
+    public NBTCompound freeze(boolean cacheEncoding) {
+        if (frozen) return this;
+        map.replaceValues(Holders::freeze);
+        if (cacheEncoding) {
+            this.cacheEncoding = true;
+            try {
+                encoded = EncodedCache.encode(this);
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+        frozenSize = serializedSize();
+        long structuralHash = computeStructuralHash();
+        cachedHash = new StructuralHash.Cached(structuralHash, null);
+        frozenHash = StructuralHash.fold(structuralHash);
+        frozen = true;
+        VarHandle.releaseFence();
+        return this;
     }
 
     public void writeToFile(File file) throws IOException {
@@ -80,7 +185,13 @@ public class NBTCompound implements NBT<Map<String, Object>>, Iterable<Map.Entry
 
     @Override
     public NBTCompound clone() {
-        return new NBTCompound(map);
+        if (frozen) return this;
+        return new NBTCompound(map.copy());
+    }
+
+    // frozen copy that leaves this compound mutable, a frozen compound is its own copy
+    NBTCompound frozenCopy() {
+        return clone().freeze();
     }
 
     public int size() {
@@ -179,32 +290,117 @@ public class NBTCompound implements NBT<Map<String, Object>>, Iterable<Map.Entry
     }
 
     public void set(String key, @Nullable Object value) {
+        checkFrozen();
         check(key, value);
         if (value == null) {
             remove(key);
             return;
         }
-        map.put(key, NBT.convert(value));
+        NBT<?> nbt = NBT.convert(value);
+        Holders.release(map.set(key, nbt));
+        Holders.hold(nbt);
+        modified();
+    }
+
+    public byte getByte(String key) {
+        return (byte) scalarBits(key, Tag.BYTE);
+    }
+
+    public byte getByte(String key, byte defaultValue) {
+        return containsKey(key) ? getByte(key) : defaultValue;
+    }
+
+    public short getShort(String key) {
+        return (short) scalarBits(key, Tag.SHORT);
+    }
+
+    public short getShort(String key, short defaultValue) {
+        return containsKey(key) ? getShort(key) : defaultValue;
+    }
+
+    public int getInt(String key) {
+        return (int) scalarBits(key, Tag.INT);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        return containsKey(key) ? getInt(key) : defaultValue;
+    }
+
+    public long getLong(String key) {
+        return scalarBits(key, Tag.LONG);
+    }
+
+    public long getLong(String key, long defaultValue) {
+        return containsKey(key) ? getLong(key) : defaultValue;
+    }
+
+    public float getFloat(String key) {
+        return Float.intBitsToFloat((int) scalarBits(key, Tag.FLOAT));
+    }
+
+    public float getFloat(String key, float defaultValue) {
+        return containsKey(key) ? getFloat(key) : defaultValue;
+    }
+
+    public double getDouble(String key) {
+        return Double.longBitsToDouble(scalarBits(key, Tag.DOUBLE));
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        return containsKey(key) ? getDouble(key) : defaultValue;
+    }
+
+    public void setByte(String key, byte value) {
+        setScalar(key, Tag.BYTE, value);
+    }
+
+    public void setShort(String key, short value) {
+        setScalar(key, Tag.SHORT, value);
+    }
+
+    public void setInt(String key, int value) {
+        setScalar(key, Tag.INT, value);
+    }
+
+    public void setLong(String key, long value) {
+        setScalar(key, Tag.LONG, value);
+    }
+
+    public void setFloat(String key, float value) {
+        setScalar(key, Tag.FLOAT, Float.floatToRawIntBits(value));
+    }
+
+    public void setDouble(String key, double value) {
+        setScalar(key, Tag.DOUBLE, Double.doubleToRawLongBits(value));
     }
 
     public NBT<?> remove(String key) {
-        return map.remove(key);
+        checkFrozen();
+        NBT<?> removed = map.remove(key);
+        if (removed != null) {
+            Holders.release(removed);
+            modified();
+        }
+        return removed;
     }
 
     public void clear() {
+        checkFrozen();
+        map.forEach((key, value) -> Holders.release(value));
         map.clear();
+        modified();
     }
 
     public @NotNull Set<String> keySet() {
-        return map.keySet();
+        return new KeySet();
     }
 
     public @NotNull Collection<NBT<?>> values() {
-        return map.values();
+        return new Values();
     }
 
     public @NotNull Set<Map.Entry<String, NBT<?>>> entrySet() {
-        return map.entrySet();
+        return new EntrySet();
     }
 
     @Override
@@ -233,12 +429,101 @@ public class NBTCompound implements NBT<Map<String, Object>>, Iterable<Map.Entry
 
     @Override
     public boolean equals(Object obj) {
-        return this == obj || obj instanceof NBTCompound other && Objects.equals(map, other.map);
+        if (this == obj) return true;
+        if (!(obj instanceof NBTCompound other)) return false;
+        // cached hashes tell most unequal compounds apart without comparing their entries
+        if (hasStructuralHash() && other.hasStructuralHash() && structuralHash(false) != other.structuralHash(false))
+            return false;
+        return map.equals(other.mapView());
     }
 
     @Override
     public int hashCode() {
-        return map.hashCode();
+        return frozen ? frozenHash : StructuralHash.fold(structuralHash());
+    }
+
+    // 64-bit hash of the whole tree, kept until this compound or any compound, list or array
+    // inside of it is modified; frozen and persistent compounds compute it once
+    public long structuralHash() {
+        return structuralHash(true);
+    }
+
+    // nested values do not keep the hash, only the compound it is requested for
+    long structuralHash(boolean cache) {
+        StructuralHash.Cached cached = cachedHash;
+        if (cached != null && cached.isValid()) return cached.hash();
+        long hash = computeStructuralHash();
+        if (cache) {
+            ModificationStamp stamp = ModificationStamp.of(this);
+            if (stamp != null) cachedHash = new StructuralHash.Cached(hash, stamp);
+        }
+        return hash;
+    }
+
+    boolean hasStructuralHash() {
+        StructuralHash.Cached cached = cachedHash;
+        return frozen || cached != null && cached.isValid();
+    }
+
+    int modCount() {
+        return modCount;
+    }
+
+    // typed accessors go through these two, numeric values are stored without NBT objects when possible
+    long scalarBits(String key, Tag tag) {
+        check(key, null);
+        return map.getBits(key, tag);
+    }
+
+    void setScalar(String key, Tag tag, long bits) {
+        checkFrozen();
+        check(key, null);
+        Holders.release(map.setBits(key, tag, bits));
+        modified();
+    }
+
+    void writePayload(NBTOutputStream stream) throws IOException {
+        int compactSize = map.compactSize();
+        if (compactSize < 0 || stream.isCanonical()) {
+            stream.writeCompound(this);
+            return;
+        }
+        for (int i = 0; i < compactSize; i++) {
+            stream.writeTag(map.tagAt(i));
+            stream.writeString(map.keyAt(i));
+            map.writeValueAt(i, stream);
+        }
+        stream.writeEnd();
+    }
+
+    // values that are held by the compound itself, for lazily decoded compounds without the encoded ones
+    Collection<NBT<?>> loadedValues() {
+        return map.values();
+    }
+
+    private long computeStructuralHash() {
+        long entries = 0;
+        int compactSize = map.compactSize();
+        for (int i = 0; i < compactSize; i++)
+            entries += StructuralHash.entry(map.keyAt(i), map.structuralHashAt(i));
+        if (compactSize < 0) {
+            for (Map.Entry<String, NBT<?>> entry : map.entrySet())
+                entries += StructuralHash.entry(entry.getKey(), StructuralHash.of(entry.getValue()));
+        }
+        return StructuralHash.compound(entries, map.size());
+    }
+
+    private void modified() {
+        modCount++;
+        encoded = null;
+    }
+
+    static int entrySize(String key, int valueSize) {
+        return Math.addExact(Byte.BYTES + Short.BYTES + ModifiedUTF8.encodedLength(key), valueSize);
+    }
+
+    private void checkFrozen() {
+        if (frozen) throw new UnsupportedOperationException("Compound is frozen");
     }
 
     private void check(Object key, Object value) {
@@ -265,21 +550,54 @@ public class NBTCompound implements NBT<Map<String, Object>>, Iterable<Map.Entry
     }
 
     public static NBTCompound readFromFile(File file, boolean hasRootKey) throws IOException {
+        // the file holds nothing but the NBT data, so it can be read ahead
         try (FileInputStream stream = new FileInputStream(file)) {
-            return readRootCompound(stream, hasRootKey);
+            return new NBTInputStream(stream, true).readRootCompound(hasRootKey);
+        }
+    }
+
+    public static NBTCompound readMappedFile(File file) throws IOException {
+        return readMappedFile(file, false);
+    }
+
+    // decodes a memory-mapped view of the file; the mapping is only released once the buffer is
+    // garbage collected, until then the file cannot be replaced or deleted on some platforms
+    public static NBTCompound readMappedFile(File file, boolean hasRootKey) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return readRootCompound(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), hasRootKey);
         }
     }
 
     public static NBTCompound readRootCompound(InputStream stream) throws IOException {
-        return new NBTInputStream(stream).readRootCompound();
+        return readRootCompound(stream, true);
     }
 
     public static NBTCompound readRootCompound(InputStream stream, boolean hasRootKey) throws IOException {
-        return new NBTInputStream(stream).readRootCompound(hasRootKey);
+        NBTInputStream nbtStream = readingAhead(stream);
+        NBTCompound compound = nbtStream.readRootCompound(hasRootKey);
+        nbtStream.release();
+        return compound;
+    }
+
+    public static NBTCompound readRootCompound(ByteBuffer buffer) throws IOException {
+        return new NBTInputStream(buffer).readRootCompound();
+    }
+
+    public static NBTCompound readRootCompound(ByteBuffer buffer, boolean hasRootKey) throws IOException {
+        return new NBTInputStream(buffer).readRootCompound(hasRootKey);
     }
 
     public static NBTCompound readCompound(InputStream stream) throws IOException {
-        return new NBTInputStream(stream).readCompound();
+        NBTInputStream nbtStream = readingAhead(stream);
+        NBTCompound compound = nbtStream.readCompound();
+        nbtStream.release();
+        return compound;
+    }
+
+    // streams that support mark and reset, such as ByteArrayInputStream and BufferedInputStream, are
+    // read ahead and then moved back to the end of the NBT data
+    static NBTInputStream readingAhead(InputStream stream) {
+        return new NBTInputStream(stream, stream.markSupported());
     }
 
     private class MapView implements Map<String, NBT<?>> {
@@ -348,6 +666,172 @@ public class NBTCompound implements NBT<Map<String, Object>>, Iterable<Map.Entry
 
     }
 
+    // views of the map that count removals through them as modifications of the compound
+
+    private class KeySet extends AbstractSet<String> {
+
+        @Override
+        public @NotNull Iterator<String> iterator() {
+            return new TrackingIterator<>(map.keySet().iterator());
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return map.containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return o instanceof String key && NBTCompound.this.remove(key) != null;
+        }
+
+        @Override
+        public void clear() {
+            NBTCompound.this.clear();
+        }
+
+    }
+
+    private class Values extends AbstractCollection<NBT<?>> {
+
+        @Override
+        public @NotNull Iterator<NBT<?>> iterator() {
+            return new TrackingIterator<>(map.values().iterator());
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return map.containsValue(o);
+        }
+
+        @Override
+        public void clear() {
+            NBTCompound.this.clear();
+        }
+
+    }
+
+    private class EntrySet extends AbstractSet<Map.Entry<String, NBT<?>>> {
+
+        @Override
+        public @NotNull Iterator<Map.Entry<String, NBT<?>>> iterator() {
+            Iterator<Map.Entry<String, NBT<?>>> iterator = map.entrySet().iterator();
+            return new TrackingIterator<>(iterator) {
+                @Override
+                public Map.Entry<String, NBT<?>> next() {
+                    return new TrackingEntry(super.next());
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return map.entrySet().contains(o);
+        }
+
+        @Override
+        public void clear() {
+            NBTCompound.this.clear();
+        }
+
+    }
+
+    private class TrackingIterator<E> implements Iterator<E> {
+
+        private final Iterator<E> iterator;
+        private @Nullable E last;
+
+        private TrackingIterator(Iterator<E> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public E next() {
+            return last = iterator.next();
+        }
+
+        @Override
+        public void remove() {
+            checkFrozen();
+            NBT<?> removed = switch (last) {
+                case String key -> map.get(key);
+                case Map.Entry<?, ?> entry -> (NBT<?>) entry.getValue();
+                case NBT<?> value -> value;
+                case null, default -> null;
+            };
+            iterator.remove();
+            Holders.release(removed);
+            modified();
+        }
+
+    }
+
+    private class TrackingEntry implements Map.Entry<String, NBT<?>> {
+
+        private final Map.Entry<String, NBT<?>> entry;
+
+        private TrackingEntry(Map.Entry<String, NBT<?>> entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public String getKey() {
+            return entry.getKey();
+        }
+
+        @Override
+        public NBT<?> getValue() {
+            return entry.getValue();
+        }
+
+        @Override
+        public NBT<?> setValue(NBT<?> value) {
+            checkFrozen();
+            check(entry.getKey(), value);
+            NBT<?> previous = entry.setValue(Objects.requireNonNull(value, "value"));
+            Holders.release(previous);
+            Holders.hold(value);
+            modified();
+            return previous;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return entry.equals(obj);
+        }
+
+        @Override
+        public int hashCode() {
+            return entry.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return entry.toString();
+        }
+
+    }
+
     private class UnmodifiableCompoundView extends NBTCompound {
 
         @Override
@@ -355,6 +839,37 @@ public class NBTCompound implements NBT<Map<String, Object>>, Iterable<Map.Entry
             NBTCompound.this.write(stream);
         }
 
+        @Override
+        public int serializedSize() {
+            return NBTCompound.this.serializedSize();
+        }
+
+        @Override
+        public int serializedRootSize(@Nullable String rootName) {
+            return NBTCompound.this.serializedRootSize(rootName);
+        }
+
+        @Override
+        public boolean isCacheEncoding() {
+            return NBTCompound.this.isCacheEncoding();
+        }
+
+        @Override
+        public void setCacheEncoding(boolean cacheEncoding) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isFrozen() {
+            return NBTCompound.this.isFrozen();
+        }
+
+        // the viewed compound stays mutable for its owner, a frozen copy of it is returned
+        @Override
+        public NBTCompound freeze(boolean cacheEncoding) {
+            return NBTCompound.this.clone().freeze(cacheEncoding);
+        }
+
         @Override
         public void writeToFile(File file) throws IOException {
             NBTCompound.this.writeToFile(file);
@@ -405,6 +920,11 @@ public class NBTCompound implements NBT<Map<String, Object>>, Iterable<Map.Entry
             return NBTCompound.this.clone().unmodifiableView();
         }
 
+        @Override
+        NBTCompound frozenCopy() {
+            return NBTCompound.this.frozenCopy();
+        }
+
         @Override
         public int size() {
             return NBTCompound.this.size();
@@ -465,6 +985,16 @@ public class NBTCompound implements NBT<Map<String, Object>>, Iterable<Map.Entry
             return NBTCompound.this.getNBT(key);
         }
 
+        @Override
+        long scalarBits(String key, Tag tag) {
+            return NBTCompound.this.scalarBits(key, tag);
+        }
+
+        @Override
+        void setScalar(String key, Tag tag, long bits) {
+            throw new UnsupportedOperationException();
+        }
+
         @Override
         public <T> void setList(String key, Inserter<T> inserter, @Nullable Collection<T> values) {
             throw new UnsupportedOperationException();
@@ -542,6 +1072,26 @@ public class NBTCompound implements NBT<Map<String, Object>>, Iterable<Map.Entry
             return this;
         }
 
+        @Override
+        int modCount() {
+            return NBTCompound.this.modCount();
+        }
+
+        @Override
+        Collection<NBT<?>> loadedValues() {
+            return NBTCompound.this.loadedValues();
+        }
+
+        @Override
+        long structuralHash(boolean cache) {
+            return NBTCompound.this.structuralHash(cache);
+        }
+
+        @Override
+        boolean hasStructuralHash() {
+            return NBTCompound.this.hasStructuralHash();
+        }
+
         @Override
         public String toString() {
             return NBTCompound.this.toString();
@@ -8,6 +8,8 @@ import java.io.IOException;
 
 public class NBTDouble implements NBT<Double> {
 
+    private static final NBTDouble ZERO = new NBTDouble(0), ONE = new NBTDouble(1);
+
     private final double value;
 
     public NBTDouble(Number number) {
@@ -18,6 +20,12 @@ public class NBTDouble implements NBT<Double> {
         this.value = value;
     }
 
+    // negative zero is not shared, its sign is kept when written
+    public static NBTDouble valueOf(double value) {
+        if (Double.doubleToRawLongBits(value) == 0) return ZERO;
+        return value == 1 ? ONE : new NBTDouble(value);
+    }
+
     @Override
     public Tag tag() {
         return Tag.DOUBLE;
@@ -43,6 +51,11 @@ public class NBTDouble implements NBT<Double> {
         stream.writeDouble(value);
     }
 
+    @Override
+    public int serializedSize() {
+        return Double.BYTES;
+    }
+
     @Override
     public String toString() {
         return new NBTStringVisitor().visitNBT(this);
@@ -37,6 +37,11 @@ public class NBTEnd implements NBT<Void> {
         stream.writeEnd();
     }
 
+    @Override
+    public int serializedSize() {
+        return Byte.BYTES;
+    }
+
     @Override
     public String toString() {
         return new NBTStringVisitor().visitNBT(this);
@@ -8,6 +8,8 @@ import java.io.IOException;
 
 public class NBTFloat implements NBT<Float> {
 
+    private static final NBTFloat ZERO = new NBTFloat(0), ONE = new NBTFloat(1);
+
     private final float value;
 
     public NBTFloat(Number number) {
@@ -18,6 +20,12 @@ public class NBTFloat implements NBT<Float> {
         this.value = value;
     }
 
+    // negative zero is not shared, its sign is kept when written
+    public static NBTFloat valueOf(float value) {
+        if (Float.floatToRawIntBits(value) == 0) return ZERO;
+        return value == 1 ? ONE : new NBTFloat(value);
+    }
+
     @Override
     public Tag tag() {
         return Tag.FLOAT;
@@ -43,6 +51,11 @@ public class NBTFloat implements NBT<Float> {
         stream.writeFloat(value);
     }
 
+    @Override
+    public int serializedSize() {
+        return Float.BYTES;
+    }
+
     @Override
     public String toString() {
         return new NBTStringVisitor().visitNBT(this);
@@ -8,6 +8,15 @@ import java.io.IOException;
 
 public class NBTInt implements NBT<Integer> {
 
+    // shared instances of small values, see valueOf
+    private static final int CACHE_LOW = -128;
+    private static final NBTInt[] CACHE = new NBTInt[1023 - CACHE_LOW + 1];
+
+    static {
+        for (int i = 0; i < CACHE.length; i++)
+            CACHE[i] = new NBTInt(i + CACHE_LOW);
+    }
+
     private final int value;
 
     public NBTInt(Number number) {
@@ -18,6 +27,11 @@ public class NBTInt implements NBT<Integer> {
         this.value = value;
     }
 
+    public static NBTInt valueOf(int value) {
+        int index = value - CACHE_LOW;
+        return index >= 0 && index < CACHE.length ? CACHE[index] : new NBTInt(value);
+    }
+
     @Override
     public Tag tag() {
         return Tag.INT;
@@ -43,6 +57,11 @@ public class NBTInt implements NBT<Integer> {
         stream.writeInt(value);
     }
 
+    @Override
+    public int serializedSize() {
+        return Integer.BYTES;
+    }
+
     @Override
     public String toString() {
         return new NBTStringVisitor().visitNBT(this);
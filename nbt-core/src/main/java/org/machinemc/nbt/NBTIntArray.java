@@ -6,23 +6,43 @@ import org.jetbrains.annotations.NotNull;
 import org.machinemc.nbt.io.NBTOutputStream;
 
 import java.io.IOException;
+import java.lang.invoke.VarHandle;
 import java.util.Arrays;
 import java.util.Objects;
 
 public class NBTIntArray implements NBTArray<int[], Integer> {
 
-    private final int[] ints;
+    // only assigned while the array is created, see wrap
+    private int[] ints;
+    // incremented by set(int, Integer), see EncodedCache
+    transient int modCount;
+    // see Holders
+    transient int holders;
+    // set by freeze, the hash is computed once
+    private transient boolean frozen;
+    private transient int frozenHash;
 
     public NBTIntArray(Integer[] ints) {
-        this(unbox(ints));
+        this.ints = unbox(ints);
     }
 
     public NBTIntArray(int size) {
-        this(new int[size]);
+        this.ints = new int[size];
     }
 
+    // the array is copied, changes to it could not be tracked by cached hashes and encodings
     public NBTIntArray(int... ints) {
-        this.ints = ints;
+        this.ints = ints.clone();
+    }
+
+    private NBTIntArray() {
+    }
+
+    // takes over an array that no one else holds, e.g. one that was just decoded
+    static NBTIntArray wrap(int[] ints) {
+        NBTIntArray array = new NBTIntArray();
+        array.ints = ints;
+        return array;
     }
 
     @Override
@@ -42,7 +62,8 @@ public class NBTIntArray implements NBTArray<int[], Integer> {
 
     @Override
     public NBTIntArray clone() {
-        return new NBTIntArray(ints.clone());
+        if (frozen) return this;
+        return wrap(ints.clone());
     }
 
     @Override
@@ -50,6 +71,11 @@ public class NBTIntArray implements NBTArray<int[], Integer> {
         stream.writeIntArray(ints);
     }
 
+    @Override
+    public int serializedSize() {
+        return Math.addExact(Integer.BYTES, Math.multiplyExact(ints.length, Integer.BYTES));
+    }
+
     @Override
     public int size() {
         return ints.length;
@@ -62,7 +88,9 @@ public class NBTIntArray implements NBTArray<int[], Integer> {
 
     @Override
     public void set(int index, @NotNull Integer element) {
+        if (frozen) throw new UnsupportedOperationException("Array is frozen");
         ints[index] = Objects.requireNonNull(element, "element");
+        modCount++;
     }
 
     @Override
@@ -82,7 +110,20 @@ public class NBTIntArray implements NBTArray<int[], Integer> {
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(ints);
+        return frozen ? frozenHash : Arrays.hashCode(ints);
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    @Override
+    public NBTIntArray freeze() {
+        if (frozen) return this;
+        frozenHash = Arrays.hashCode(ints);
+        frozen = true;
+        VarHandle.releaseFence();
+        return this;
     }
 
     private static int[] unbox(Integer[] value) {
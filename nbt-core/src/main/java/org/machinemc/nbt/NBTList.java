@@ -1,6 +1,7 @@
 package org.machinemc.nbt;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.UnmodifiableView;
 import org.machinemc.nbt.exceptions.NBTException;
 import org.machinemc.nbt.io.NBTOutputStream;
@@ -9,26 +10,52 @@ import org.machinemc.nbt.visitor.NBTVisitor;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.VarHandle;
 import java.util.*;
 import java.util.function.Consumer;
 
 public class NBTList implements NBT<List<Object>>, Iterable<NBT<?>> {
 
-    private final List<NBT<?>> list;
+    // unboxed PrimitiveElements for numeric element types
+    private List<NBT<?>> list;
     private Tag type = Tag.END;
 
     private transient ListView listView;
     private transient NBTList unmodifiableView;
 
+    // number of modifications of this list, see EncodedCache
+    private transient int modCount;
+    // see Holders
+    transient int holders;
+    private transient boolean cacheEncoding;
+    private transient @Nullable EncodedCache encoded;
+    // set by freeze, the hash and size are computed once
+    private transient boolean frozen;
+    private transient int frozenHash;
+    private transient int frozenSize;
+    // see structuralHash
+    private transient StructuralHash.@Nullable Cached cachedHash;
+
     public NBTList() {
         this(Tag.END);
     }
 
     public NBTList(Tag type) {
-        this.list = new ArrayList<>();
+        this(type, storage(type));
+    }
+
+    private NBTList(Tag type, List<NBT<?>> list) {
+        this.list = list;
         this.type = type;
     }
 
+    // lists with immutable storage, see PersistentNBTList
+    NBTList(Tag type, List<NBT<?>> list, boolean frozen) {
+        this(type, list);
+        this.frozen = frozen;
+    }
+
     public NBTList(Object... objects) {
         this(List.of(objects));
     }
@@ -67,12 +94,88 @@ public class NBTList implements NBT<List<Object>>, Iterable<NBT<?>> {
 
     @Override
     public NBTList clone() {
-        return new NBTList(list);
+        if (frozen) return this;
+        if (list instanceof PrimitiveElements elements) return new NBTList(type, elements.copy());
+        List<NBT<?>> copy = new ArrayList<>(list.size());
+        for (NBT<?> element : list) {
+            NBT<?> clone = element instanceof NBTString ? element : element.clone();
+            Holders.hold(clone);
+            copy.add(clone);
+        }
+        return new NBTList(type, copy);
+    }
+
+    // frozen copy that leaves this list mutable, a frozen list is its own copy
+    NBTList frozenCopy() {
+        return clone().freeze();
     }
 
     @Override
     public void write(NBTOutputStream stream) throws IOException {
-        stream.writeList(list);
+        // cached bytes are not written in canonical order
+        if (cacheEncoding && !stream.isCanonical()) {
+            if (encoded == null || !frozen && !encoded.isValid()) encoded = EncodedCache.encode(this);
+            if (encoded != null) {
+                encoded.write(stream);
+                return;
+            }
+        }
+        writePayload(stream);
+    }
+
+    @Override
+    public int serializedSize() {
+        if (frozen) return frozenSize;
+        if (encoded != null && encoded.isValid()) return encoded.size();
+        if (list instanceof PrimitiveElements elements)
+            return Math.addExact(Byte.BYTES + Integer.BYTES, Math.multiplyExact(elements.size(), elements.width()));
+        int size = Byte.BYTES + Integer.BYTES;
+        for (NBT<?> nbt : this)
+            size = Math.addExact(size, nbt.serializedSize());
+        return size;
+    }
+
+    public boolean isCacheEncoding() {
+        return cacheEncoding;
+    }
+
+    // keeps the encoded payload after a write and copies it on the following writes,
+    // until this list or any compound, list or array inside of it is modified
+    public void setCacheEncoding(boolean cacheEncoding) {
+        checkFrozen();
+        this.cacheEncoding = cacheEncoding;
+        if (!cacheEncoding) encoded = null;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    @Override
+    public NBTList freeze() {
+        return freeze(false);
+    }
+
+    // makes this list and every compound, list and array inside of it immutable,
+    // a frozen tree can be shared between threads once this returns
+    public NBTList freeze(boolean cacheEncoding) {
+        if (frozen) return this;
+        if (!(list instanceof PrimitiveElements)) list.replaceAll(Holders::freeze);
+        if (cacheEncoding) {
+            this.cacheEncoding = true;
+            try {
+                encoded = EncodedCache.encode(this);
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+        frozenSize = serializedSize();
+        long structuralHash = computeStructuralHash();
+        cachedHash = new StructuralHash.Cached(structuralHash, null);
+        frozenHash = StructuralHash.fold(structuralHash);
+        frozen = true;
+        VarHandle.releaseFence();
+        return this;
     }
 
     public Tag getElementType() {
@@ -93,7 +196,28 @@ public class NBTList implements NBT<List<Object>>, Iterable<NBT<?>> {
 
     @Override
     public @NotNull Iterator<NBT<?>> iterator() {
-        return list.iterator();
+        Iterator<NBT<?>> iterator = list.iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            private @Nullable NBT<?> last;
+
+            @Override
+            public NBT<?> next() {
+                return last = iterator.next();
+            }
+
+            @Override
+            public void remove() {
+                checkFrozen();
+                iterator.remove();
+                Holders.release(last);
+                modified();
+            }
+        };
     }
 
     public <T> T getValue(int index, T defaultValue) {
@@ -121,7 +245,13 @@ public class NBTList implements NBT<List<Object>>, Iterable<NBT<?>> {
     }
 
     public NBT<?> set(int index, NBT<?> element) {
-        return list.set(index, check(element));
+        checkFrozen();
+        element = check(element);
+        NBT<?> previous = list.set(index, element);
+        Holders.release(previous);
+        Holders.hold(element);
+        modified();
+        return previous;
     }
 
     public void addValue(int index, Object element) {
@@ -129,11 +259,19 @@ public class NBTList implements NBT<List<Object>>, Iterable<NBT<?>> {
     }
 
     public void add(int index, NBT<?> element) {
-        list.add(index, check(element));
+        checkFrozen();
+        element = check(element);
+        list.add(index, element);
+        Holders.hold(element);
+        modified();
     }
 
     public NBT<?> remove(int index) {
-        return list.remove(index);
+        checkFrozen();
+        NBT<?> removed = list.remove(index);
+        Holders.release(removed);
+        modified();
+        return removed;
     }
 
     public int indexOf(Object o) {
@@ -149,15 +287,148 @@ public class NBTList implements NBT<List<Object>>, Iterable<NBT<?>> {
     }
 
     public boolean add(NBT<?> nbt) {
-        return list.add(check(nbt));
+        checkFrozen();
+        nbt = check(nbt);
+        list.add(nbt);
+        Holders.hold(nbt);
+        modified();
+        return true;
     }
 
     public boolean remove(Object o) {
-        return list.remove(NBT.convert(o));
+        checkFrozen();
+        int index = list.indexOf(NBT.convert(o));
+        if (index < 0) return false;
+        Holders.release(list.remove(index));
+        modified();
+        return true;
     }
 
     public void clear() {
+        checkFrozen();
+        if (!(list instanceof PrimitiveElements)) list.forEach(Holders::release);
         list.clear();
+        modified();
+    }
+
+    public byte getByte(int index) {
+        return elements(Tag.BYTE, PrimitiveElements.Bytes.class).getByte(index);
+    }
+
+    public void setByte(int index, byte value) {
+        checkFrozen();
+        elements(Tag.BYTE, PrimitiveElements.Bytes.class).setByte(index, value);
+        modified();
+    }
+
+    public void addByte(byte value) {
+        checkFrozen();
+        if (type == Tag.END) {
+            type = Tag.BYTE;
+            list = storage(type);
+        }
+        elements(Tag.BYTE, PrimitiveElements.Bytes.class).addByte(value);
+        modified();
+    }
+
+    public short getShort(int index) {
+        return elements(Tag.SHORT, PrimitiveElements.Shorts.class).getShort(index);
+    }
+
+    public void setShort(int index, short value) {
+        checkFrozen();
+        elements(Tag.SHORT, PrimitiveElements.Shorts.class).setShort(index, value);
+        modified();
+    }
+
+    public void addShort(short value) {
+        checkFrozen();
+        if (type == Tag.END) {
+            type = Tag.SHORT;
+            list = storage(type);
+        }
+        elements(Tag.SHORT, PrimitiveElements.Shorts.class).addShort(value);
+        modified();
+    }
+
+    public int getInt(int index) {
+        return elements(Tag.INT, PrimitiveElements.Ints.class).getInt(index);
+    }
+
+    public void setInt(int index, int value) {
+        checkFrozen();
+        elements(Tag.INT, PrimitiveElements.Ints.class).setInt(index, value);
+        modified();
+    }
+
+    public void addInt(int value) {
+        checkFrozen();
+        if (type == Tag.END) {
+            type = Tag.INT;
+            list = storage(type);
+        }
+        elements(Tag.INT, PrimitiveElements.Ints.class).addInt(value);
+        modified();
+    }
+
+    public long getLong(int index) {
+        return elements(Tag.LONG, PrimitiveElements.Longs.class).getLong(index);
+    }
+
+    public void setLong(int index, long value) {
+        checkFrozen();
+        elements(Tag.LONG, PrimitiveElements.Longs.class).setLong(index, value);
+        modified();
+    }
+
+    public void addLong(long value) {
+        checkFrozen();
+        if (type == Tag.END) {
+            type = Tag.LONG;
+            list = storage(type);
+        }
+        elements(Tag.LONG, PrimitiveElements.Longs.class).addLong(value);
+        modified();
+    }
+
+    public float getFloat(int index) {
+        return elements(Tag.FLOAT, PrimitiveElements.Floats.class).getFloat(index);
+    }
+
+    public void setFloat(int index, float value) {
+        checkFrozen();
+        elements(Tag.FLOAT, PrimitiveElements.Floats.class).setFloat(index, value);
+        modified();
+    }
+
+    public void addFloat(float value) {
+        checkFrozen();
+        if (type == Tag.END) {
+            type = Tag.FLOAT;
+            list = storage(type);
+        }
+        elements(Tag.FLOAT, PrimitiveElements.Floats.class).addFloat(value);
+        modified();
+    }
+
+    public double getDouble(int index) {
+        return elements(Tag.DOUBLE, PrimitiveElements.Doubles.class).getDouble(index);
+    }
+
+    public void setDouble(int index, double value) {
+        checkFrozen();
+        elements(Tag.DOUBLE, PrimitiveElements.Doubles.class).setDouble(index, value);
+        modified();
+    }
+
+    public void addDouble(double value) {
+        checkFrozen();
+        if (type == Tag.END) {
+            type = Tag.DOUBLE;
+            list = storage(type);
+        }
+        elements(Tag.DOUBLE, PrimitiveElements.Doubles.class).addDouble(value);
+        modified();
     }
 
     public List<NBT<?>> listView() {
@@ -177,12 +448,82 @@ public class NBTList implements NBT<List<Object>>, Iterable<NBT<?>> {
 
     @Override
     public boolean equals(Object obj) {
-        return obj == this || obj instanceof NBTList other && Objects.equals(list, other.list);
+        if (obj == this) return true;
+        if (!(obj instanceof NBTList other)) return false;
+        // cached hashes tell most unequal lists apart without comparing their elements
+        if (hasStructuralHash() && other.hasStructuralHash() && structuralHash(false) != other.structuralHash(false))
+            return false;
+        return Objects.equals(list, other.list);
     }
 
     @Override
     public int hashCode() {
-        return list.hashCode();
+        return frozen ? frozenHash : StructuralHash.fold(structuralHash());
+    }
+
+    // 64-bit hash of the whole tree, kept until this list or any compound, list or array
+    // inside of it is modified; frozen and persistent lists compute it once
+    public long structuralHash() {
+        return structuralHash(true);
+    }
+
+    // nested values do not keep the hash, only the list it is requested for
+    long structuralHash(boolean cache) {
+        StructuralHash.Cached cached = cachedHash;
+        if (cached != null && cached.isValid()) return cached.hash();
+        long hash = computeStructuralHash();
+        if (cache) {
+            ModificationStamp stamp = ModificationStamp.of(this);
+            if (stamp != null) cachedHash = new StructuralHash.Cached(hash, stamp);
+        }
+        return hash;
+    }
+
+    boolean hasStructuralHash() {
+        StructuralHash.Cached cached = cachedHash;
+        return frozen || cached != null && cached.isValid();
+    }
+
+    int modCount() {
+        return modCount;
+    }
+
+    void writePayload(NBTOutputStream stream) throws IOException {
+        if (list instanceof PrimitiveElements elements && !elements.isEmpty()) {
+            stream.writeTag(type);
+            stream.writeInt(elements.size());
+            elements.write(stream);
+            return;
+        }
+        stream.writeList(this);
+    }
+
+    private long computeStructuralHash() {
+        long elements = 0;
+        if (list instanceof PrimitiveElements primitive) {
+            for (int i = 0; i < primitive.size(); i++)
+                elements = StructuralHash.append(elements, StructuralHash.scalar(type, primitive.bits(i)));
+        } else {
+            for (NBT<?> element : list)
+                elements = StructuralHash.append(elements, StructuralHash.of(element));
+        }
+        return StructuralHash.list(elements, list.size());
+    }
+
+    // unboxed storage of the list, the element type has to be the given one
+    private <T extends PrimitiveElements> T elements(Tag tag, Class<T> storage) {
+        if (type != tag)
+            throw new NBTException("Expected " + tag.getTypeName() + ", but the list is marked for '" + type.getTypeName() + "'");
+        return storage.cast(list);
+    }
+
+    private void checkFrozen() {
+        if (frozen) throw new UnsupportedOperationException("List is frozen");
+    }
+
+    private void modified() {
+        modCount++;
+        encoded = null;
     }
 
     private NBT<?> check(NBT<?> nbt) {
@@ -191,6 +532,9 @@ public class NBTList implements NBT<List<Object>>, Iterable<NBT<?>> {
 
         if (type == Tag.END) {
             type = nbt.tag();
+            // the list is empty until the first element determines its type
+            PrimitiveElements elements = PrimitiveElements.of(type, 0);
+            if (elements != null) list = elements;
             return nbt;
         }
         if (type != nbt.tag())
@@ -198,7 +542,63 @@ public class NBTList implements NBT<List<Object>>, Iterable<NBT<?>> {
         return nbt;
     }
 
-    private class ListView implements List<NBT<?>> {
+    // modifications through the iterators and sub lists of AbstractList go through the methods of the list
+    private static List<NBT<?>> storage(Tag type) {
+        PrimitiveElements elements = PrimitiveElements.of(type, 0);
+        return elements != null ? elements : new ArrayList<>();
+    }
+
+    // the values are copied, like the arrays of NBTByteArray, NBTIntArray and NBTLongArray
+    public static NBTList ofBytes(byte... values) {
+        return new NBTList(Tag.BYTE, new PrimitiveElements.Bytes(values.clone(), values.length));
+    }
+
+    public static NBTList ofShorts(short... values) {
+        return new NBTList(Tag.SHORT, new PrimitiveElements.Shorts(values.clone(), values.length));
+    }
+
+    public static NBTList ofInts(int... values) {
+        return new NBTList(Tag.INT, new PrimitiveElements.Ints(values.clone(), values.length));
+    }
+
+    public static NBTList ofLongs(long... values) {
+        return new NBTList(Tag.LONG, new PrimitiveElements.Longs(values.clone(), values.length));
+    }
+
+    public static NBTList ofFloats(float... values) {
+        return new NBTList(Tag.FLOAT, new PrimitiveElements.Floats(values.clone(), values.length));
+    }
+
+    public static NBTList ofDoubles(double... values) {
+        return new NBTList(Tag.DOUBLE, new PrimitiveElements.Doubles(values.clone(), values.length));
+    }
+
+    // take over arrays that no one else holds, e.g. ones that were just decoded
+    static NBTList wrapBytes(byte[] values) {
+        return new NBTList(Tag.BYTE, new PrimitiveElements.Bytes(values, values.length));
+    }
+
+    static NBTList wrapShorts(short[] values) {
+        return new NBTList(Tag.SHORT, new PrimitiveElements.Shorts(values, values.length));
+    }
+
+    static NBTList wrapInts(int[] values) {
+        return new NBTList(Tag.INT, new PrimitiveElements.Ints(values, values.length));
+    }
+
+    static NBTList wrapLongs(long[] values) {
+        return new NBTList(Tag.LONG, new PrimitiveElements.Longs(values, values.length));
+    }
+
+    static NBTList wrapFloats(float[] values) {
+        return new NBTList(Tag.FLOAT, new PrimitiveElements.Floats(values, values.length));
+    }
+
+    static NBTList wrapDoubles(double[] values) {
+        return new NBTList(Tag.DOUBLE, new PrimitiveElements.Doubles(values, values.length));
+    }
+
+    private class ListView extends AbstractList<NBT<?>> {
 
         @Override
         public int size() {
@@ -321,21 +721,6 @@ public class NBTList implements NBT<List<Object>>, Iterable<NBT<?>> {
             return NBTList.this.lastIndexOf(o);
         }
 
-        @Override
-        public @NotNull ListIterator<NBT<?>> listIterator() {
-            return list.listIterator();
-        }
-
-        @Override
-        public @NotNull ListIterator<NBT<?>> listIterator(int index) {
-            return list.listIterator(index);
-        }
-
-        @Override
-        public @NotNull List<NBT<?>> subList(int fromIndex, int toIndex) {
-            return list.subList(fromIndex, toIndex);
-        }
-
     }
 
     private class UnmodifiableListView extends NBTList {
@@ -360,11 +745,57 @@ public class NBTList implements NBT<List<Object>>, Iterable<NBT<?>> {
             return NBTList.this.clone().unmodifiableView();
         }
 
+        @Override
+        NBTList frozenCopy() {
+            return NBTList.this.frozenCopy();
+        }
+
         @Override
         public void write(NBTOutputStream stream) throws IOException {
             NBTList.this.write(stream);
         }
 
+        @Override
+        public int serializedSize() {
+            return NBTList.this.serializedSize();
+        }
+
+        @Override
+        public boolean isCacheEncoding() {
+            return NBTList.this.isCacheEncoding();
+        }
+
+        @Override
+        public void setCacheEncoding(boolean cacheEncoding) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isFrozen() {
+            return NBTList.this.isFrozen();
+        }
+
+        // the viewed list stays mutable for its owner, a frozen copy of it is returned
+        @Override
+        public NBTList freeze(boolean cacheEncoding) {
+            return NBTList.this.clone().freeze(cacheEncoding);
+        }
+
+        @Override
+        int modCount() {
+            return NBTList.this.modCount();
+        }
+
+        @Override
+        long structuralHash(boolean cache) {
+            return NBTList.this.structuralHash(cache);
+        }
+
+        @Override
+        boolean hasStructuralHash() {
+            return NBTList.this.hasStructuralHash();
+        }
+
         @Override
         public Tag getElementType() {
             return NBTList.this.getElementType();
@@ -487,6 +918,96 @@ public class NBTList implements NBT<List<Object>>, Iterable<NBT<?>> {
             throw new UnsupportedOperationException();
         }
 
+        @Override
+        public byte getByte(int index) {
+            return NBTList.this.getByte(index);
+        }
+
+        @Override
+        public void setByte(int index, byte value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void addByte(byte value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public short getShort(int index) {
+            return NBTList.this.getShort(index);
+        }
+
+        @Override
+        public void setShort(int index, short value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void addShort(short value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getInt(int index) {
+            return NBTList.this.getInt(index);
+        }
+
+        @Override
+        public void setInt(int index, int value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void addInt(int value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long getLong(int index) {
+            return NBTList.this.getLong(index);
+        }
+
+        @Override
+        public void setLong(int index, long value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void addLong(long value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public float getFloat(int index) {
+            return NBTList.this.getFloat(index);
+        }
+
+        @Override
+        public void setFloat(int index, float value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void addFloat(float value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public double getDouble(int index) {
+            return NBTList.this.getDouble(index);
+        }
+
+        @Override
+        public void setDouble(int index, double value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void addDouble(double value) {
+            throw new UnsupportedOperationException();
+        }
+
         @Override
         public List<NBT<?>> listView() {
             return Collections.unmodifiableList(NBTList.this.listView());
@@ -43,6 +43,11 @@ public class NBTLong implements NBT<Long> {
         stream.writeLong(value);
     }
 
+    @Override
+    public int serializedSize() {
+        return Long.BYTES;
+    }
+
     @Override
     public String toString() {
         return new NBTStringVisitor().visitNBT(this);
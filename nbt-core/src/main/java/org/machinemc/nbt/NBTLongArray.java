@@ -6,23 +6,43 @@ import org.machinemc.nbt.visitor.NBTVisitor;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
+import java.lang.invoke.VarHandle;
 import java.util.Arrays;
 import java.util.Objects;
 
 public class NBTLongArray implements NBTArray<long[], Long> {
 
-    private final long[] longs;
+    // only assigned while the array is created, see wrap
+    private long[] longs;
+    // incremented by set(int, Long), see EncodedCache
+    transient int modCount;
+    // see Holders
+    transient int holders;
+    // set by freeze, the hash is computed once
+    private transient boolean frozen;
+    private transient int frozenHash;
 
     public NBTLongArray(Long[] longs) {
-        this(unbox(longs));
+        this.longs = unbox(longs);
     }
 
     public NBTLongArray(int size) {
-        this(new Long[size]);
+        this.longs = new long[size];
     }
 
+    // the array is copied, changes to it could not be tracked by cached hashes and encodings
     public NBTLongArray(long... longs) {
-        this.longs = longs;
+        this.longs = longs.clone();
+    }
+
+    private NBTLongArray() {
+    }
+
+    // takes over an array that no one else holds, e.g. one that was just decoded
+    static NBTLongArray wrap(long[] longs) {
+        NBTLongArray array = new NBTLongArray();
+        array.longs = longs;
+        return array;
     }
 
     @Override
@@ -42,7 +62,8 @@ public class NBTLongArray implements NBTArray<long[], Long> {
 
     @Override
     public NBTLongArray clone() {
-        return new NBTLongArray(longs.clone());
+        if (frozen) return this;
+        return wrap(longs.clone());
     }
 
     @Override
@@ -50,6 +71,11 @@ public class NBTLongArray implements NBTArray<long[], Long> {
         stream.writeLongArray(longs);
     }
 
+    @Override
+    public int serializedSize() {
+        return Math.addExact(Integer.BYTES, Math.multiplyExact(longs.length, Long.BYTES));
+    }
+
     @Override
     public int size() {
         return longs.length;
@@ -62,7 +88,9 @@ public class NBTLongArray implements NBTArray<long[], Long> {
 
     @Override
     public void set(int index, @NotNull Long element) {
+        if (frozen) throw new UnsupportedOperationException("Array is frozen");
         longs[index] = Objects.requireNonNull(element, "element");
+        modCount++;
     }
 
     @Override
@@ -82,7 +110,20 @@ public class NBTLongArray implements NBTArray<long[], Long> {
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(longs);
+        return frozen ? frozenHash : Arrays.hashCode(longs);
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    @Override
+    public NBTLongArray freeze() {
+        if (frozen) return this;
+        frozenHash = Arrays.hashCode(longs);
+        frozen = true;
+        VarHandle.releaseFence();
+        return this;
     }
 
     private static long[] unbox(Long[] value) {
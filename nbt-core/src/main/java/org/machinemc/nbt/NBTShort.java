@@ -8,6 +8,15 @@ import java.io.IOException;
 
 public class NBTShort implements NBT<Short> {
 
+    // shared instances of small values, see valueOf
+    private static final int CACHE_LOW = -128;
+    private static final NBTShort[] CACHE = new NBTShort[1023 - CACHE_LOW + 1];
+
+    static {
+        for (int i = 0; i < CACHE.length; i++)
+            CACHE[i] = new NBTShort((short) (i + CACHE_LOW));
+    }
+
     private final short value;
 
     public NBTShort(Number number) {
@@ -18,6 +27,11 @@ public class NBTShort implements NBT<Short> {
         this.value = value;
     }
 
+    public static NBTShort valueOf(short value) {
+        int index = value - CACHE_LOW;
+        return index >= 0 && index < CACHE.length ? CACHE[index] : new NBTShort(value);
+    }
+
     @Override
     public Tag tag() {
         return Tag.SHORT;
@@ -43,6 +57,11 @@ public class NBTShort implements NBT<Short> {
         stream.writeShort(value);
     }
 
+    @Override
+    public int serializedSize() {
+        return Short.BYTES;
+    }
+
     @Override
     public String toString() {
         return new NBTStringVisitor().visitNBT(this);
@@ -1,5 +1,6 @@
 package org.machinemc.nbt;
 
+import org.machinemc.nbt.io.ModifiedUTF8;
 import org.machinemc.nbt.io.NBTOutputStream;
 import org.machinemc.nbt.visitor.NBTStringVisitor;
 import org.machinemc.nbt.visitor.NBTVisitor;
@@ -10,6 +11,7 @@ import java.util.Objects;
 public class NBTString implements NBT<String> {
 
     private final String string;
+    private transient int serializedSize = -1;
 
     public NBTString(Object object) {
         this(object instanceof String str ? str : String.valueOf(object));
@@ -44,6 +46,12 @@ public class NBTString implements NBT<String> {
         stream.writeString(string);
     }
 
+    @Override
+    public int serializedSize() {
+        if (serializedSize == -1) serializedSize = Short.BYTES + ModifiedUTF8.encodedLength(string);
+        return serializedSize;
+    }
+
     @Override
     public String toString() {
         return new NBTStringVisitor().visitNBT(this);
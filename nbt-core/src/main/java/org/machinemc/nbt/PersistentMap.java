@@ -0,0 +1,277 @@
+package org.machinemc.nbt;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+// immutable hash array mapped trie of the entries of a persistent compound,
+// an update copies only the nodes on the path to the changed entry
+final class PersistentMap {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    // bitmap nodes on every level of a 32-bit hash and a collision node
+    private static final int MAX_DEPTH = (Integer.SIZE + BITS - 1) / BITS + 1;
+
+    static final PersistentMap EMPTY = new PersistentMap(new BitmapNode(0, new Object[0]), 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @Nullable NBT<?> get(Object key) {
+        if (!(key instanceof String string)) return null;
+        return root.get(string, string.hashCode(), 0);
+    }
+
+    // the previous value has to be known to keep the size
+    PersistentMap put(String key, NBT<?> value, boolean replaces) {
+        Node root = this.root.put(key, key.hashCode(), value, 0);
+        return root == this.root ? this : new PersistentMap(root, replaces ? size : size + 1);
+    }
+
+    PersistentMap remove(String key) {
+        Node root = this.root.remove(key, key.hashCode(), 0);
+        if (root == this.root) return this;
+        return root != null ? new PersistentMap(root, size - 1) : EMPTY;
+    }
+
+    void forEach(BiConsumer<? super String, ? super NBT<?>> action) {
+        root.forEach(action);
+    }
+
+    Iterator<Map.Entry<String, NBT<?>>> iterator() {
+        return new EntryIterator(root);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << (hash >>> shift & MASK);
+    }
+
+    // entries are stored in pairs, a null key marks a pair whose value is the child node
+    private abstract static class Node {
+
+        final Object[] array;
+
+        Node(Object[] array) {
+            this.array = array;
+        }
+
+        abstract @Nullable NBT<?> get(String key, int hash, int shift);
+
+        abstract Node put(String key, int hash, NBT<?> value, int shift);
+
+        // null if the node is empty afterwards
+        abstract @Nullable Node remove(String key, int hash, int shift);
+
+        void forEach(BiConsumer<? super String, ? super NBT<?>> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null) ((Node) array[i + 1]).forEach(action);
+                else action.accept((String) array[i], (NBT<?>) array[i + 1]);
+            }
+        }
+
+    }
+
+    private static final class BitmapNode extends Node {
+
+        private final int bitmap;
+
+        BitmapNode(int bitmap, Object[] array) {
+            super(array);
+            this.bitmap = bitmap;
+        }
+
+        @Override
+        @Nullable NBT<?> get(String key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) return null;
+            int index = index(bit);
+            Object other = array[index];
+            if (other == null) return ((Node) array[index + 1]).get(key, hash, shift + BITS);
+            return key.equals(other) ? (NBT<?>) array[index + 1] : null;
+        }
+
+        @Override
+        Node put(String key, int hash, NBT<?> value, int shift) {
+            int bit = bit(hash, shift);
+            int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] array = new Object[this.array.length + 2];
+                System.arraycopy(this.array, 0, array, 0, index);
+                array[index] = key;
+                array[index + 1] = value;
+                System.arraycopy(this.array, index, array, index + 2, this.array.length - index);
+                return new BitmapNode(bitmap | bit, array);
+            }
+            Object other = array[index];
+            Object current = array[index + 1];
+            Object replacement;
+            if (other == null) {
+                Node child = ((Node) current).put(key, hash, value, shift + BITS);
+                if (child == current) return this;
+                replacement = child;
+            } else if (key.equals(other)) {
+                if (value == current) return this;
+                replacement = value;
+            } else {
+                replacement = merge((String) other, (NBT<?>) current, key, hash, value, shift + BITS);
+            }
+            Object[] array = this.array.clone();
+            if (replacement instanceof Node) array[index] = null;
+            array[index + 1] = replacement;
+            return new BitmapNode(bitmap, array);
+        }
+
+        @Override
+        @Nullable Node remove(String key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) return this;
+            int index = index(bit);
+            Object other = array[index];
+            if (other == null) {
+                Node child = ((Node) array[index + 1]).remove(key, hash, shift + BITS);
+                if (child == array[index + 1]) return this;
+                if (child != null) {
+                    Object[] array = this.array.clone();
+                    array[index + 1] = child;
+                    return new BitmapNode(bitmap, array);
+                }
+            } else if (!key.equals(other)) {
+                return this;
+            }
+            if (bitmap == bit) return null;
+            Object[] array = new Object[this.array.length - 2];
+            System.arraycopy(this.array, 0, array, 0, index);
+            System.arraycopy(this.array, index + 2, array, index, array.length - index);
+            return new BitmapNode(bitmap & ~bit, array);
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & bit - 1) * 2;
+        }
+
+        private static Node merge(String key1, NBT<?> value1, String key2, int hash2, NBT<?> value2, int shift) {
+            int hash1 = key1.hashCode();
+            if (hash1 == hash2) return new CollisionNode(hash1, new Object[] {key1, value1, key2, value2});
+            return new BitmapNode(0, new Object[0])
+                    .put(key1, hash1, value1, shift)
+                    .put(key2, hash2, value2, shift);
+        }
+
+    }
+
+    // keys with the same hash
+    private static final class CollisionNode extends Node {
+
+        private final int hash;
+
+        CollisionNode(int hash, Object[] array) {
+            super(array);
+            this.hash = hash;
+        }
+
+        @Override
+        @Nullable NBT<?> get(String key, int hash, int shift) {
+            int index = indexOf(key);
+            return index >= 0 ? (NBT<?>) array[index + 1] : null;
+        }
+
+        @Override
+        Node put(String key, int hash, NBT<?> value, int shift) {
+            if (hash != this.hash)
+                return new BitmapNode(bit(this.hash, shift), new Object[] {null, this}).put(key, hash, value, shift);
+            int index = indexOf(key);
+            Object[] array;
+            if (index >= 0) {
+                if (this.array[index + 1] == value) return this;
+                array = this.array.clone();
+            } else {
+                index = this.array.length;
+                array = Arrays.copyOf(this.array, index + 2);
+                array[index] = key;
+            }
+            array[index + 1] = value;
+            return new CollisionNode(hash, array);
+        }
+
+        @Override
+        @Nullable Node remove(String key, int hash, int shift) {
+            int index = indexOf(key);
+            if (index < 0) return this;
+            if (array.length == 2) return null;
+            Object[] array = new Object[this.array.length - 2];
+            System.arraycopy(this.array, 0, array, 0, index);
+            System.arraycopy(this.array, index + 2, array, index, array.length - index);
+            return new CollisionNode(hash, array);
+        }
+
+        private int indexOf(String key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) return i;
+            }
+            return -1;
+        }
+
+    }
+
+    private static final class EntryIterator implements Iterator<Map.Entry<String, NBT<?>>> {
+
+        private final Object[][] arrays = new Object[MAX_DEPTH][];
+        private final int[] indexes = new int[MAX_DEPTH];
+        private int depth;
+        private @Nullable Map.Entry<String, NBT<?>> next;
+
+        EntryIterator(Node root) {
+            arrays[depth++] = root.array;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<String, NBT<?>> next() {
+            Map.Entry<String, NBT<?>> next = this.next;
+            if (next == null) throw new NoSuchElementException();
+            advance();
+            return next;
+        }
+
+        private void advance() {
+            while (depth > 0) {
+                Object[] array = arrays[depth - 1];
+                int index = indexes[depth - 1];
+                if (index == array.length) {
+                    indexes[--depth] = 0;
+                    continue;
+                }
+                indexes[depth - 1] = index + 2;
+                if (array[index] == null) {
+                    arrays[depth++] = ((Node) array[index + 1]).array;
+                } else {
+                    next = new AbstractMap.SimpleImmutableEntry<>((String) array[index], (NBT<?>) array[index + 1]);
+                    return;
+                }
+            }
+            next = null;
+        }
+
+    }
+
+}
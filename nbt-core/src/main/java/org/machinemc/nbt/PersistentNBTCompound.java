@@ -0,0 +1,256 @@
+package org.machinemc.nbt;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.machinemc.nbt.exceptions.NBTException;
+import org.machinemc.nbt.io.NBTOutputStream;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+// compound that is never modified in place, with and without return new versions that share
+// all unchanged nodes of the trie with this one, which makes clone free;
+// frozen copies of the values are added, the values of the caller stay mutable
+public class PersistentNBTCompound extends NBTCompound {
+
+    private static final PersistentNBTCompound EMPTY = new PersistentNBTCompound(PersistentMap.EMPTY, 0, Byte.BYTES);
+
+    private final PersistentMap entries;
+    // maintained for each version, sum of the entry hashes, see StructuralHash
+    private final long entriesHash;
+    private final int serializedSize;
+
+    private PersistentNBTCompound(PersistentMap entries, long entriesHash, int serializedSize) {
+        super(true);
+        this.entries = entries;
+        this.entriesHash = entriesHash;
+        this.serializedSize = serializedSize;
+    }
+
+    public static PersistentNBTCompound empty() {
+        return EMPTY;
+    }
+
+    public static PersistentNBTCompound copyOf(NBTCompound compound) {
+        if (compound instanceof PersistentNBTCompound persistent) return persistent;
+        PersistentNBTCompound copy = EMPTY;
+        for (Map.Entry<String, NBT<?>> entry : compound)
+            copy = copy.with(entry.getKey(), entry.getValue());
+        return copy;
+    }
+
+    public PersistentNBTCompound with(String key, @Nullable Object value) {
+        if (key == null)
+            throw new NBTException("Compounds cannot have null keys");
+        if (value == null) return without(key);
+        NBT<?> nbt = NBT.convert(value);
+        if (nbt == null)
+            throw new NBTException("Cannot convert " + value.getClass().getName() + " to NBT");
+        if (nbt.tag() == Tag.END)
+            throw new NBTException(Tag.END.getTypeName() + " cannot be used as a value");
+        nbt = frozenCopy(nbt);
+        NBT<?> previous = entries.get(key);
+        if (previous == nbt) return this;
+        long entriesHash = this.entriesHash + entryHash(key, nbt);
+        int serializedSize = Math.addExact(this.serializedSize, entrySize(key, nbt.serializedSize()));
+        if (previous != null) {
+            entriesHash -= entryHash(key, previous);
+            serializedSize -= entrySize(key, previous.serializedSize());
+        }
+        return new PersistentNBTCompound(entries.put(key, nbt, previous != null), entriesHash, serializedSize);
+    }
+
+    public PersistentNBTCompound without(String key) {
+        NBT<?> previous = entries.get(key);
+        if (previous == null) return this;
+        return new PersistentNBTCompound(entries.remove(key), entriesHash - entryHash(key, previous),
+                serializedSize - entrySize(key, previous.serializedSize()));
+    }
+
+    @Override
+    public void write(NBTOutputStream stream) throws IOException {
+        writePayload(stream);
+    }
+
+    @Override
+    public int serializedSize() {
+        return serializedSize;
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return entries.size() == 0;
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        return entries.get(key) != null;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        NBT<?> nbt = NBT.convert(value);
+        for (Iterator<Map.Entry<String, NBT<?>>> iterator = entries.iterator(); iterator.hasNext(); ) {
+            if (iterator.next().getValue().equals(nbt)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends NBT<?>> T getNBT(String key) {
+        return (T) entries.get(key);
+    }
+
+    @Override
+    long scalarBits(String key, Tag tag) {
+        if (key == null)
+            throw new NBTException("Compounds cannot have null keys");
+        return CompactMap.bits(key, tag, entries.get(key));
+    }
+
+    @Override
+    public @NotNull Set<String> keySet() {
+        return new AbstractSet<>() {
+            @Override
+            public @NotNull Iterator<String> iterator() {
+                Iterator<Map.Entry<String, NBT<?>>> iterator = entries.iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public String next() {
+                        return iterator.next().getKey();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return entries.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return entries.get(o) != null;
+            }
+        };
+    }
+
+    @Override
+    public @NotNull Collection<NBT<?>> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public @NotNull Iterator<NBT<?>> iterator() {
+                Iterator<Map.Entry<String, NBT<?>>> iterator = entries.iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public NBT<?> next() {
+                        return iterator.next().getValue();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return entries.size();
+            }
+        };
+    }
+
+    @Override
+    public @NotNull Set<Map.Entry<String, NBT<?>>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public @NotNull Iterator<Map.Entry<String, NBT<?>>> iterator() {
+                return entries.iterator();
+            }
+
+            @Override
+            public int size() {
+                return entries.size();
+            }
+        };
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super NBT<?>> action) {
+        entries.forEach(action);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof NBTCompound other) || other.size() != size()) return false;
+        if (other.hasStructuralHash() && other.structuralHash(false) != structuralHash(false)) return false;
+        for (Iterator<Map.Entry<String, NBT<?>>> iterator = entries.iterator(); iterator.hasNext(); ) {
+            Map.Entry<String, NBT<?>> entry = iterator.next();
+            if (!entry.getValue().equals(other.getNBT(entry.getKey()))) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return StructuralHash.fold(structuralHash(false));
+    }
+
+    @Override
+    long structuralHash(boolean cache) {
+        return StructuralHash.compound(entriesHash, entries.size());
+    }
+
+    @Override
+    void writePayload(NBTOutputStream stream) throws IOException {
+        if (stream.isCanonical()) {
+            stream.writeCompound(this);
+            return;
+        }
+        for (Iterator<Map.Entry<String, NBT<?>>> iterator = entries.iterator(); iterator.hasNext(); ) {
+            Map.Entry<String, NBT<?>> entry = iterator.next();
+            NBT<?> value = entry.getValue();
+            stream.writeTag(value.tag());
+            stream.writeString(entry.getKey());
+            value.write(stream);
+        }
+        stream.writeEnd();
+    }
+
+    @Override
+    Collection<NBT<?>> loadedValues() {
+        return values();
+    }
+
+    // values of the caller stay mutable, frozen values are used as they are
+    static NBT<?> frozenCopy(NBT<?> value) {
+        return switch (value) {
+            case NBTCompound compound -> compound.frozenCopy();
+            case NBTList list -> list.frozenCopy();
+            case NBTByteArray array -> array.clone().freeze();
+            case NBTIntArray array -> array.clone().freeze();
+            case NBTLongArray array -> array.clone().freeze();
+            // e.g. unmodifiable views of arrays
+            case NBTArray<?, ?> array -> Objects.requireNonNull(NBT.convert(array.revert())).freeze();
+            default -> value.freeze();
+        };
+    }
+
+    private static long entryHash(String key, NBT<?> value) {
+        return StructuralHash.entry(key, StructuralHash.of(value));
+    }
+
+}
@@ -0,0 +1,132 @@
+package org.machinemc.nbt;
+
+import org.machinemc.nbt.exceptions.NBTException;
+
+import java.util.Collections;
+import java.util.List;
+
+// list that is never modified in place, with, append and withoutLast return new versions
+// that share all unchanged nodes with this one, which makes clone free;
+// frozen copies of the elements are added, the elements of the caller stay mutable
+public class PersistentNBTList extends NBTList {
+
+    private static final PersistentNBTList EMPTY = new PersistentNBTList(Tag.END, PersistentVector.EMPTY, 0, Byte.BYTES + Integer.BYTES);
+
+    private final Tag type;
+    private final PersistentVector elements;
+    // maintained for each version, polynomial of the element hashes, see StructuralHash
+    private final long elementsHash;
+    private final int serializedSize;
+
+    private PersistentNBTList(Tag type, PersistentVector elements, long elementsHash, int serializedSize) {
+        super(type, elements, true);
+        this.type = type;
+        this.elements = elements;
+        this.elementsHash = elementsHash;
+        this.serializedSize = serializedSize;
+    }
+
+    public static PersistentNBTList empty() {
+        return EMPTY;
+    }
+
+    public static PersistentNBTList copyOf(NBTList list) {
+        if (list instanceof PersistentNBTList persistent) return persistent;
+        PersistentNBTList copy = EMPTY;
+        for (NBT<?> element : list)
+            copy = copy.append(element);
+        return copy;
+    }
+
+    public PersistentNBTList append(Object value) {
+        NBT<?> element = check(value);
+        return new PersistentNBTList(element.tag(), elements.append(element),
+                StructuralHash.append(elementsHash, StructuralHash.of(element)),
+                Math.addExact(serializedSize, element.serializedSize()));
+    }
+
+    public PersistentNBTList with(int index, Object value) {
+        NBT<?> element = check(value);
+        NBT<?> previous = elements.get(index);
+        long elementsHash = StructuralHash.replace(this.elementsHash, elements.size(), index,
+                StructuralHash.of(previous), StructuralHash.of(element));
+        int serializedSize = Math.addExact(this.serializedSize - previous.serializedSize(), element.serializedSize());
+        return new PersistentNBTList(type, elements.with(index, element), elementsHash, serializedSize);
+    }
+
+    public PersistentNBTList withoutLast() {
+        if (elements.isEmpty()) throw new NBTException("List is empty");
+        if (elements.size() == 1) return EMPTY;
+        NBT<?> last = elements.get(elements.size() - 1);
+        return new PersistentNBTList(type, elements.withoutLast(),
+                StructuralHash.removeLast(elementsHash, StructuralHash.of(last)), serializedSize - last.serializedSize());
+    }
+
+    @Override
+    public int serializedSize() {
+        return serializedSize;
+    }
+
+    @Override
+    public byte getByte(int index) {
+        return ((NBTByte) element(Tag.BYTE, index)).revert();
+    }
+
+    @Override
+    public short getShort(int index) {
+        return ((NBTShort) element(Tag.SHORT, index)).revert();
+    }
+
+    @Override
+    public int getInt(int index) {
+        return ((NBTInt) element(Tag.INT, index)).revert();
+    }
+
+    @Override
+    public long getLong(int index) {
+        return ((NBTLong) element(Tag.LONG, index)).revert();
+    }
+
+    @Override
+    public float getFloat(int index) {
+        return ((NBTFloat) element(Tag.FLOAT, index)).revert();
+    }
+
+    @Override
+    public double getDouble(int index) {
+        return ((NBTDouble) element(Tag.DOUBLE, index)).revert();
+    }
+
+    @Override
+    public List<NBT<?>> listView() {
+        return Collections.unmodifiableList(elements);
+    }
+
+    @Override
+    public int hashCode() {
+        return StructuralHash.fold(structuralHash(false));
+    }
+
+    @Override
+    long structuralHash(boolean cache) {
+        return StructuralHash.list(elementsHash, elements.size());
+    }
+
+    private NBT<?> check(Object value) {
+        NBT<?> element = NBT.convert(value);
+        if (element == null)
+            throw new NBTException("Lists may not contain null values");
+        if (element.tag() == Tag.END)
+            throw new NBTException(Tag.END.getTypeName() + " cannot be used as a value");
+        if (type != Tag.END && type != element.tag())
+            throw new NBTException("Lists may contain one type of value. This is marked for '" + type.getTypeName() + "'");
+        return PersistentNBTCompound.frozenCopy(element);
+    }
+
+    private NBT<?> element(Tag tag, int index) {
+        if (type != tag)
+            throw new NBTException("Expected " + tag.getTypeName() + ", but the list is marked for '" + type.getTypeName() + "'");
+        return elements.get(index);
+    }
+
+}
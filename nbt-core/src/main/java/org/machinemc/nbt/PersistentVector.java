@@ -0,0 +1,140 @@
+package org.machinemc.nbt;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+// immutable trie of 32 element arrays holding the elements of a persistent list, the last array
+// is kept outside of the trie so appending usually copies only that one
+final class PersistentVector extends AbstractList<NBT<?>> implements RandomAccess {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final Object[] EMPTY_NODE = new Object[0];
+
+    static final PersistentVector EMPTY = new PersistentVector(0, BITS, EMPTY_NODE, EMPTY_NODE);
+
+    private final int size;
+    private final int shift;
+    // inner nodes hold child nodes, the nodes on the lowest level hold elements
+    private final Object[] root;
+    private final Object[] tail;
+
+    private PersistentVector(int size, int shift, Object[] root, Object[] tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public NBT<?> get(int index) {
+        Objects.checkIndex(index, size);
+        return (NBT<?>) nodeOf(index)[index & MASK];
+    }
+
+    PersistentVector append(NBT<?> element) {
+        if (size - tailOffset() < WIDTH) {
+            Object[] tail = Arrays.copyOf(this.tail, this.tail.length + 1);
+            tail[this.tail.length] = element;
+            return new PersistentVector(size + 1, shift, root, tail);
+        }
+        Object[] root;
+        int shift = this.shift;
+        if (size >>> BITS > 1 << this.shift) {
+            root = new Object[] {this.root, path(this.shift, this.tail)};
+            shift += BITS;
+        } else {
+            root = pushTail(this.shift, this.root);
+        }
+        return new PersistentVector(size + 1, shift, root, new Object[] {element});
+    }
+
+    PersistentVector with(int index, NBT<?> element) {
+        Objects.checkIndex(index, size);
+        if (index >= tailOffset()) {
+            Object[] tail = this.tail.clone();
+            tail[index & MASK] = element;
+            return new PersistentVector(size, shift, root, tail);
+        }
+        return new PersistentVector(size, shift, with(shift, root, index, element), tail);
+    }
+
+    PersistentVector withoutLast() {
+        if (size == 0) throw new IllegalStateException("Vector is empty");
+        if (size == 1) return EMPTY;
+        if (size - tailOffset() > 1)
+            return new PersistentVector(size - 1, shift, root, Arrays.copyOf(tail, tail.length - 1));
+        Object[] tail = nodeOf(size - 2);
+        Object[] root = withoutLast(shift, this.root);
+        int shift = this.shift;
+        if (root == null) {
+            root = EMPTY_NODE;
+        } else if (shift > BITS && root.length == 1) {
+            root = (Object[]) root[0];
+            shift -= BITS;
+        }
+        return new PersistentVector(size - 1, shift, root, tail);
+    }
+
+    private int tailOffset() {
+        return size < WIDTH ? 0 : (size - 1) >>> BITS << BITS;
+    }
+
+    private Object[] nodeOf(int index) {
+        if (index >= tailOffset()) return tail;
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS)
+            node = (Object[]) node[index >>> level & MASK];
+        return node;
+    }
+
+    // appends the full tail to the trie
+    private Object[] pushTail(int level, Object[] parent) {
+        int index = (size - 1) >>> level & MASK;
+        Object[] node = Arrays.copyOf(parent, Math.max(parent.length, index + 1));
+        if (level == BITS) {
+            node[index] = tail;
+        } else {
+            Object[] child = index < parent.length ? (Object[]) parent[index] : null;
+            node[index] = child != null ? pushTail(level - BITS, child) : path(level - BITS, tail);
+        }
+        return node;
+    }
+
+    private static Object[] path(int level, Object[] node) {
+        return level == 0 ? node : new Object[] {path(level - BITS, node)};
+    }
+
+    private static Object[] with(int level, Object[] node, int index, NBT<?> element) {
+        Object[] copy = node.clone();
+        if (level == 0) {
+            copy[index & MASK] = element;
+        } else {
+            int child = index >>> level & MASK;
+            copy[child] = with(level - BITS, (Object[]) node[child], index, element);
+        }
+        return copy;
+    }
+
+    // removes the last node on the lowest level, null if the node is empty afterwards
+    private Object[] withoutLast(int level, Object[] node) {
+        int index = (size - 2) >>> level & MASK;
+        if (level > BITS) {
+            Object[] child = withoutLast(level - BITS, (Object[]) node[index]);
+            if (child == null) return index == 0 ? null : Arrays.copyOf(node, index);
+            Object[] copy = node.clone();
+            copy[index] = child;
+            return copy;
+        }
+        return index == 0 ? null : Arrays.copyOf(node, index);
+    }
+
+}
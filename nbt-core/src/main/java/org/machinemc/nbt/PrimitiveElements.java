@@ -0,0 +1,537 @@
+package org.machinemc.nbt;
+
+import org.jetbrains.annotations.Nullable;
+import org.machinemc.nbt.io.NBTOutputStream;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+// storage of lists with a numeric element type, the values are kept unboxed
+// and NBT objects are only created when elements are accessed as such
+abstract class PrimitiveElements extends AbstractList<NBT<?>> implements RandomAccess {
+
+    int size;
+
+    static @Nullable PrimitiveElements of(NBT.Tag tag, int capacity) {
+        return switch (tag) {
+            case BYTE -> new Bytes(new byte[capacity], 0);
+            case SHORT -> new Shorts(new short[capacity], 0);
+            case INT -> new Ints(new int[capacity], 0);
+            case LONG -> new Longs(new long[capacity], 0);
+            case FLOAT -> new Floats(new float[capacity], 0);
+            case DOUBLE -> new Doubles(new double[capacity], 0);
+            default -> null;
+        };
+    }
+
+    // encoded size of a single element
+    abstract int width();
+
+    abstract int capacity();
+
+    abstract void resize(int capacity);
+
+    abstract void move(int from, int to, int length);
+
+    abstract NBT<?> box(int index);
+
+    // raw bits of the element as kept by CompactMap, see StructuralHash
+    abstract long bits(int index);
+
+    // elements can be other implementations with the tag of the storage, their reverted value is a number
+    abstract void unbox(int index, NBT<?> element);
+
+    abstract void write(NBTOutputStream stream) throws IOException;
+
+    abstract PrimitiveElements copy();
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public NBT<?> get(int index) {
+        Objects.checkIndex(index, size);
+        return box(index);
+    }
+
+    @Override
+    public NBT<?> set(int index, NBT<?> element) {
+        Objects.checkIndex(index, size);
+        NBT<?> previous = box(index);
+        unbox(index, element);
+        return previous;
+    }
+
+    @Override
+    public void add(int index, NBT<?> element) {
+        Objects.checkIndex(index, size + 1);
+        insert(index);
+        unbox(index, element);
+    }
+
+    @Override
+    public NBT<?> remove(int index) {
+        Objects.checkIndex(index, size);
+        NBT<?> previous = box(index);
+        removeRange(index, index + 1);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        move(toIndex, fromIndex, size - toIndex);
+        size -= toIndex - fromIndex;
+        modCount++;
+    }
+
+    // makes room for an element at the index, most lists are small so the storage starts out empty
+    void insert(int index) {
+        if (size == capacity()) resize(size + Math.max(1, size >> 1));
+        move(index, index + 1, size - index);
+        size++;
+        modCount++;
+    }
+
+    static final class Bytes extends PrimitiveElements {
+
+        private byte[] values;
+
+        Bytes(byte[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        byte getByte(int index) {
+            Objects.checkIndex(index, size);
+            return values[index];
+        }
+
+        void setByte(int index, byte value) {
+            Objects.checkIndex(index, size);
+            values[index] = value;
+        }
+
+        void addByte(byte value) {
+            insert(size);
+            values[size - 1] = value;
+        }
+
+        @Override
+        int width() {
+            return Byte.BYTES;
+        }
+
+        @Override
+        int capacity() {
+            return values.length;
+        }
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void move(int from, int to, int length) {
+            System.arraycopy(values, from, values, to, length);
+        }
+
+        @Override
+        NBT<?> box(int index) {
+            return NBTByte.valueOf(values[index]);
+        }
+
+        @Override
+        long bits(int index) {
+            return values[index];
+        }
+
+        @Override
+        void unbox(int index, NBT<?> element) {
+            values[index] = element instanceof NBTByte nbt ? nbt.revert() : ((Number) element.revert()).byteValue();
+        }
+
+        @Override
+        void write(NBTOutputStream stream) throws IOException {
+            stream.write(values, 0, size);
+        }
+
+        @Override
+        PrimitiveElements copy() {
+            return new Bytes(Arrays.copyOf(values, size), size);
+        }
+
+    }
+
+    static final class Shorts extends PrimitiveElements {
+
+        private short[] values;
+
+        Shorts(short[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        short getShort(int index) {
+            Objects.checkIndex(index, size);
+            return values[index];
+        }
+
+        void setShort(int index, short value) {
+            Objects.checkIndex(index, size);
+            values[index] = value;
+        }
+
+        void addShort(short value) {
+            insert(size);
+            values[size - 1] = value;
+        }
+
+        @Override
+        int width() {
+            return Short.BYTES;
+        }
+
+        @Override
+        int capacity() {
+            return values.length;
+        }
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void move(int from, int to, int length) {
+            System.arraycopy(values, from, values, to, length);
+        }
+
+        @Override
+        NBT<?> box(int index) {
+            return NBTShort.valueOf(values[index]);
+        }
+
+        @Override
+        long bits(int index) {
+            return values[index];
+        }
+
+        @Override
+        void unbox(int index, NBT<?> element) {
+            values[index] = element instanceof NBTShort nbt ? nbt.revert() : ((Number) element.revert()).shortValue();
+        }
+
+        @Override
+        void write(NBTOutputStream stream) throws IOException {
+            for (int i = 0; i < size; i++)
+                stream.writeShort(values[i]);
+        }
+
+        @Override
+        PrimitiveElements copy() {
+            return new Shorts(Arrays.copyOf(values, size), size);
+        }
+
+    }
+
+    static final class Ints extends PrimitiveElements {
+
+        private int[] values;
+
+        Ints(int[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        int getInt(int index) {
+            Objects.checkIndex(index, size);
+            return values[index];
+        }
+
+        void setInt(int index, int value) {
+            Objects.checkIndex(index, size);
+            values[index] = value;
+        }
+
+        void addInt(int value) {
+            insert(size);
+            values[size - 1] = value;
+        }
+
+        @Override
+        int width() {
+            return Integer.BYTES;
+        }
+
+        @Override
+        int capacity() {
+            return values.length;
+        }
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void move(int from, int to, int length) {
+            System.arraycopy(values, from, values, to, length);
+        }
+
+        @Override
+        NBT<?> box(int index) {
+            return NBTInt.valueOf(values[index]);
+        }
+
+        @Override
+        long bits(int index) {
+            return values[index];
+        }
+
+        @Override
+        void unbox(int index, NBT<?> element) {
+            values[index] = element instanceof NBTInt nbt ? nbt.revert() : ((Number) element.revert()).intValue();
+        }
+
+        @Override
+        void write(NBTOutputStream stream) throws IOException {
+            for (int i = 0; i < size; i++)
+                stream.writeInt(values[i]);
+        }
+
+        @Override
+        PrimitiveElements copy() {
+            return new Ints(Arrays.copyOf(values, size), size);
+        }
+
+    }
+
+    static final class Longs extends PrimitiveElements {
+
+        private long[] values;
+
+        Longs(long[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        long getLong(int index) {
+            Objects.checkIndex(index, size);
+            return values[index];
+        }
+
+        void setLong(int index, long value) {
+            Objects.checkIndex(index, size);
+            values[index] = value;
+        }
+
+        void addLong(long value) {
+            insert(size);
+            values[size - 1] = value;
+        }
+
+        @Override
+        int width() {
+            return Long.BYTES;
+        }
+
+        @Override
+        int capacity() {
+            return values.length;
+        }
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void move(int from, int to, int length) {
+            System.arraycopy(values, from, values, to, length);
+        }
+
+        @Override
+        NBT<?> box(int index) {
+            return new NBTLong(values[index]);
+        }
+
+        @Override
+        long bits(int index) {
+            return values[index];
+        }
+
+        @Override
+        void unbox(int index, NBT<?> element) {
+            values[index] = element instanceof NBTLong nbt ? nbt.revert() : ((Number) element.revert()).longValue();
+        }
+
+        @Override
+        void write(NBTOutputStream stream) throws IOException {
+            for (int i = 0; i < size; i++)
+                stream.writeLong(values[i]);
+        }
+
+        @Override
+        PrimitiveElements copy() {
+            return new Longs(Arrays.copyOf(values, size), size);
+        }
+
+    }
+
+    static final class Floats extends PrimitiveElements {
+
+        private float[] values;
+
+        Floats(float[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        float getFloat(int index) {
+            Objects.checkIndex(index, size);
+            return values[index];
+        }
+
+        void setFloat(int index, float value) {
+            Objects.checkIndex(index, size);
+            values[index] = value;
+        }
+
+        void addFloat(float value) {
+            insert(size);
+            values[size - 1] = value;
+        }
+
+        @Override
+        int width() {
+            return Float.BYTES;
+        }
+
+        @Override
+        int capacity() {
+            return values.length;
+        }
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void move(int from, int to, int length) {
+            System.arraycopy(values, from, values, to, length);
+        }
+
+        @Override
+        NBT<?> box(int index) {
+            return NBTFloat.valueOf(values[index]);
+        }
+
+        @Override
+        long bits(int index) {
+            return Float.floatToRawIntBits(values[index]);
+        }
+
+        @Override
+        void unbox(int index, NBT<?> element) {
+            values[index] = element instanceof NBTFloat nbt ? nbt.revert() : ((Number) element.revert()).floatValue();
+        }
+
+        @Override
+        void write(NBTOutputStream stream) throws IOException {
+            for (int i = 0; i < size; i++)
+                stream.writeFloat(values[i]);
+        }
+
+        @Override
+        PrimitiveElements copy() {
+            return new Floats(Arrays.copyOf(values, size), size);
+        }
+
+    }
+
+    static final class Doubles extends PrimitiveElements {
+
+        private double[] values;
+
+        Doubles(double[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        double getDouble(int index) {
+            Objects.checkIndex(index, size);
+            return values[index];
+        }
+
+        void setDouble(int index, double value) {
+            Objects.checkIndex(index, size);
+            values[index] = value;
+        }
+
+        void addDouble(double value) {
+            insert(size);
+            values[size - 1] = value;
+        }
+
+        @Override
+        int width() {
+            return Double.BYTES;
+        }
+
+        @Override
+        int capacity() {
+            return values.length;
+        }
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void move(int from, int to, int length) {
+            System.arraycopy(values, from, values, to, length);
+        }
+
+        @Override
+        NBT<?> box(int index) {
+            return NBTDouble.valueOf(values[index]);
+        }
+
+        @Override
+        long bits(int index) {
+            return Double.doubleToRawLongBits(values[index]);
+        }
+
+        @Override
+        void unbox(int index, NBT<?> element) {
+            values[index] = element instanceof NBTDouble nbt ? nbt.revert() : ((Number) element.revert()).doubleValue();
+        }
+
+        @Override
+        void write(NBTOutputStream stream) throws IOException {
+            for (int i = 0; i < size; i++)
+                stream.writeDouble(values[i]);
+        }
+
+        @Override
+        PrimitiveElements copy() {
+            return new Doubles(Arrays.copyOf(values, size), size);
+        }
+
+    }
+
+}
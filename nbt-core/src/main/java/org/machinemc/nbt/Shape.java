@@ -0,0 +1,124 @@
+package org.machinemc.nbt;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// immutable layout of the keys of a compound, compounds with the same keys in the same order
+// share one shape and store only their values, see CompactMap
+final class Shape {
+
+    // largest shape, compounds with more keys are hashed
+    static final int MAX_KEYS = 64;
+    // shapes with more keys are searched through a hash table instead of linearly
+    private static final int LINEAR_KEYS = 8;
+    // bounds the transition tree for documents with many distinct key sets,
+    // compounds created after the limit is reached get shapes of their own
+    private static final int MAX_SHARED = 16384;
+    private static final AtomicInteger sharedCount = new AtomicInteger();
+
+    static final Shape EMPTY = new Shape(new String[0], true);
+
+    private final String[] keys;
+    // index + 1 of the key stored in each slot, probed linearly
+    private final int @Nullable [] table;
+    private final boolean shared;
+    // shapes with one more key appended, only for shared shapes
+    private volatile @Nullable Map<String, Shape> transitions;
+
+    private Shape(String[] keys, boolean shared) {
+        this.keys = keys;
+        this.shared = shared;
+        this.table = keys.length > LINEAR_KEYS ? buildTable(keys) : null;
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    String keyAt(int index) {
+        return keys[index];
+    }
+
+    int indexOf(Object key) {
+        if (!(key instanceof String string)) return -1;
+        int hash = string.hashCode();
+        if (table == null) {
+            for (int i = 0; i < keys.length; i++) {
+                String other = keys[i];
+                if (other == string || other.hashCode() == hash && other.equals(string)) return i;
+            }
+            return -1;
+        }
+        int mask = table.length - 1;
+        for (int slot = spread(hash) & mask; table[slot] != 0; slot = slot + 1 & mask) {
+            String other = keys[table[slot] - 1];
+            if (other == string || other.hashCode() == hash && other.equals(string)) return table[slot] - 1;
+        }
+        return -1;
+    }
+
+    // the shape with the key appended, null if it would have to be searched through a table of its own
+    @Nullable Shape with(String key) {
+        if (shared) {
+            Map<String, Shape> transitions = transitions();
+            Shape next = transitions.get(key);
+            if (next != null) return next;
+            if (sharedCount.get() < MAX_SHARED) {
+                return transitions.computeIfAbsent(key, k -> {
+                    sharedCount.incrementAndGet();
+                    return new Shape(append(keys, k), true);
+                });
+            }
+        }
+        if (keys.length >= LINEAR_KEYS) return null;
+        return new Shape(append(keys, key), false);
+    }
+
+    // the shape without the key at the index
+    Shape without(int index) {
+        Shape shape = EMPTY;
+        for (int i = 0; i < keys.length && shape != null; i++) {
+            if (i != index) shape = shape.with(keys[i]);
+        }
+        if (shape != null) return shape;
+        String[] remaining = new String[keys.length - 1];
+        System.arraycopy(keys, 0, remaining, 0, index);
+        System.arraycopy(keys, index + 1, remaining, index, remaining.length - index);
+        return new Shape(remaining, false);
+    }
+
+    private Map<String, Shape> transitions() {
+        Map<String, Shape> transitions = this.transitions;
+        if (transitions != null) return transitions;
+        synchronized (this) {
+            if (this.transitions == null) this.transitions = new ConcurrentHashMap<>(4);
+            return this.transitions;
+        }
+    }
+
+    private static String[] append(String[] keys, String key) {
+        String[] appended = Arrays.copyOf(keys, keys.length + 1);
+        appended[keys.length] = key;
+        return appended;
+    }
+
+    private static int[] buildTable(String[] keys) {
+        int[] table = new int[Integer.highestOneBit(keys.length) << 2];
+        int mask = table.length - 1;
+        for (int i = 0; i < keys.length; i++) {
+            int slot = spread(keys[i].hashCode()) & mask;
+            while (table[slot] != 0) slot = slot + 1 & mask;
+            table[slot] = i + 1;
+        }
+        return table;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ hash >>> 16;
+    }
+
+}
@@ -0,0 +1,98 @@
+package org.machinemc.nbt;
+
+import org.jetbrains.annotations.Nullable;
+import org.machinemc.nbt.NBT.Tag;
+
+// 64-bit hash of a value with the primes and final mix of xxHash64, equal values have equal hashes;
+// entries of compounds are summed so that their order does not matter, elements of lists are
+// combined as a polynomial so that a list can update its hash for a single element
+final class StructuralHash {
+
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+    // inverse of PRIME_1 modulo 2^64, removes the last element from the hash of a list
+    private static final long INVERSE_PRIME_1 = 0x0887493432BADB37L;
+
+    private StructuralHash() {
+        throw new UnsupportedOperationException();
+    }
+
+    static long of(NBT<?> nbt) {
+        return switch (nbt) {
+            case NBTCompound compound -> compound.structuralHash(false);
+            case NBTList list -> list.structuralHash(false);
+            case NBTByte value -> scalar(Tag.BYTE, value.revert());
+            case NBTShort value -> scalar(Tag.SHORT, value.revert());
+            case NBTInt value -> scalar(Tag.INT, value.revert());
+            case NBTLong value -> scalar(Tag.LONG, value.revert());
+            case NBTFloat value -> scalar(Tag.FLOAT, Float.floatToRawIntBits(value.revert()));
+            case NBTDouble value -> scalar(Tag.DOUBLE, Double.doubleToRawLongBits(value.revert()));
+            // strings and arrays hash their whole content
+            default -> mix(nbt.tag().ordinal() * PRIME_3 + nbt.hashCode());
+        };
+    }
+
+    // raw bits as kept by CompactMap and PrimitiveElements
+    static long scalar(Tag tag, long bits) {
+        // 0 and -0 are equal
+        if (tag == Tag.FLOAT && Float.intBitsToFloat((int) bits) == 0
+                || tag == Tag.DOUBLE && Double.longBitsToDouble(bits) == 0) bits = 0;
+        return mix(tag.ordinal() * PRIME_3 + bits * PRIME_2);
+    }
+
+    static long entry(String key, long valueHash) {
+        return mix(key.hashCode() * PRIME_1 ^ valueHash);
+    }
+
+    // sum of the entry hashes
+    static long compound(long entries, int size) {
+        return mix((entries ^ Tag.COMPOUND.ordinal()) + size * PRIME_2);
+    }
+
+    // polynomial of the element hashes, see append
+    static long list(long elements, int size) {
+        return mix((elements ^ Tag.LIST.ordinal()) + size * PRIME_2);
+    }
+
+    static long append(long elements, long element) {
+        return elements * PRIME_1 + element;
+    }
+
+    static long removeLast(long elements, long last) {
+        return (elements - last) * INVERSE_PRIME_1;
+    }
+
+    static long replace(long elements, int size, int index, long previous, long element) {
+        long power = 1;
+        long base = PRIME_1;
+        for (int exponent = size - 1 - index; exponent > 0; exponent >>= 1) {
+            if ((exponent & 1) != 0) power *= base;
+            base *= base;
+        }
+        return elements + (element - previous) * power;
+    }
+
+    static int fold(long hash) {
+        return (int) (hash ^ hash >>> 32);
+    }
+
+    // a hash with the stamp it is valid for, kept in a single field so that a thread never sees the hash
+    // of one state with the stamp of another; frozen values keep it without a stamp
+    record Cached(long hash, @Nullable ModificationStamp stamp) {
+
+        boolean isValid() {
+            return stamp == null || stamp.isValid();
+        }
+
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= PRIME_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME_3;
+        return hash ^ hash >>> 32;
+    }
+
+}
@@ -0,0 +1,88 @@
+package org.machinemc.nbt.io;
+
+import java.io.UTFDataFormatException;
+import java.nio.charset.StandardCharsets;
+
+// Java's modified UTF-8, used by NBT strings: U+0000 is encoded as two bytes
+// and supplementary characters as two separately encoded surrogates
+public final class ModifiedUTF8 {
+
+    public static final int MAX_LENGTH = 0xFFFF;
+
+    private ModifiedUTF8() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static int encodedLength(String value) {
+        int length = value.length();
+        int encoded = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80 || c == 0) encoded += c >= 0x800 ? 2 : 1;
+        }
+        return encoded;
+    }
+
+    // the destination must have room for encodedLength(value) bytes
+    public static int encode(String value, byte[] destination, int offset) {
+        int length = value.length();
+        int i = 0;
+        for (char c; i < length && (c = value.charAt(i)) < 0x80 && c != 0; i++)
+            destination[offset++] = (byte) c;
+        for (; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80 && c != 0) {
+                destination[offset++] = (byte) c;
+            } else if (c < 0x800) {
+                destination[offset++] = (byte) (0xC0 | c >> 6);
+                destination[offset++] = (byte) (0x80 | c & 0x3F);
+            } else {
+                destination[offset++] = (byte) (0xE0 | c >> 12);
+                destination[offset++] = (byte) (0x80 | c >> 6 & 0x3F);
+                destination[offset++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        return offset;
+    }
+
+    public static String decode(byte[] source, int offset, int length) throws UTFDataFormatException {
+        int end = offset + length;
+        int i = offset;
+        while (i < end && source[i] >= 0) i++;
+        // every byte is ASCII, which is also valid Latin-1
+        if (i == end) return new String(source, offset, length, StandardCharsets.ISO_8859_1);
+
+        char[] chars = new char[length];
+        int count = 0;
+        for (int j = offset; j < i; j++)
+            chars[count++] = (char) source[j];
+        while (i < end) {
+            int b = source[i] & 0xFF;
+            if (b < 0x80) {
+                chars[count++] = (char) b;
+                i++;
+            } else if ((b & 0xE0) == 0xC0) {
+                if (i + 1 >= end) throw malformed(i - offset);
+                int b2 = source[i + 1];
+                if ((b2 & 0xC0) != 0x80) throw malformed(i - offset);
+                chars[count++] = (char) ((b & 0x1F) << 6 | b2 & 0x3F);
+                i += 2;
+            } else if ((b & 0xF0) == 0xE0) {
+                if (i + 2 >= end) throw malformed(i - offset);
+                int b2 = source[i + 1];
+                int b3 = source[i + 2];
+                if ((b2 & 0xC0) != 0x80 || (b3 & 0xC0) != 0x80) throw malformed(i - offset);
+                chars[count++] = (char) ((b & 0x0F) << 12 | (b2 & 0x3F) << 6 | b3 & 0x3F);
+                i += 3;
+            } else {
+                throw malformed(i - offset);
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    private static UTFDataFormatException malformed(int index) {
+        return new UTFDataFormatException("Malformed modified UTF-8 input around byte " + index);
+    }
+
+}
@@ -1,12 +1,19 @@
 package org.machinemc.nbt.io;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.machinemc.nbt.*;
 import org.machinemc.nbt.exceptions.NBTException;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
 import java.util.zip.GZIPInputStream;
 
 public class NBTInputStream extends InputStream {
@@ -15,10 +22,89 @@ public class NBTInputStream extends InputStream {
     private static final short GZIP_HEADER = 0x1F8B;
     private static final byte[] GZIP_HEADER_BYTES = {(byte) (GZIP_HEADER >>> Byte.SIZE), (byte) (GZIP_HEADER & 0xFF)};
 
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private static final VarHandle SHORT_HANDLE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INT_HANDLE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG_HANDLE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
     private InputStream in;
 
+    // bytes in [position, limit) of the buffer are read from 'in' but not yet consumed
+    private byte[] buffer;
+    // when reading from a buffer without an accessible array, bytes are read from here instead
+    private ByteBuffer source;
+    private int position;
+    private int limit;
+    // whether the buffer is a caller supplied array that must not be written to
+    private boolean external;
+    // whether more bytes than are needed may be read from 'in', see NBTInputStream(InputStream, int, boolean)
+    private boolean readAhead;
+    // whether 'in' is marked at the first byte of the buffer, see release
+    private boolean marked;
+    private boolean lazy;
+
+    private @Nullable NBTStringTable keyTable = NBTStringTable.shared();
+    private @Nullable NBTStringTable valueTable;
+    private byte[] scratch;
+    // keys and values of the compounds that are being decoded, reused for each nesting depth;
+    // numeric values are held as their tag with the raw bits in scalarScratch
+    private Object[][] compoundScratch = new Object[0][];
+    private long[][] scalarScratch = new long[0][];
+    private int compoundDepth;
+
+    // reads no more bytes from the stream than the NBT data has, the bytes after it are left to the caller;
+    // this takes a read of the stream for each value, callers that own the stream should pass readAhead
     public NBTInputStream(InputStream in) {
-        this.in = in;
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    public NBTInputStream(InputStream in, int bufferSize) {
+        this(in, bufferSize, false);
+    }
+
+    public NBTInputStream(InputStream in, boolean readAhead) {
+        this(in, DEFAULT_BUFFER_SIZE, readAhead);
+    }
+
+    // with readAhead, the buffer is filled with as many bytes as the stream provides, which may
+    // consume bytes after the NBT data; for streams that hold nothing else, such as files, or
+    // streams that support mark and reset, which release moves back to the end of the NBT data
+    public NBTInputStream(InputStream in, int bufferSize, boolean readAhead) {
+        if (bufferSize < Long.BYTES)
+            throw new IllegalArgumentException("Buffer size must be at least " + Long.BYTES + " bytes");
+        this.in = Objects.requireNonNull(in, "in");
+        this.buffer = new byte[bufferSize];
+        this.readAhead = readAhead;
+    }
+
+    // reads directly from the given array, without copying it
+    public NBTInputStream(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    public NBTInputStream(byte[] bytes, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        this.in = InputStream.nullInputStream();
+        this.buffer = bytes;
+        this.position = offset;
+        this.limit = offset + length;
+        this.external = true;
+    }
+
+    // reads the remaining bytes of the buffer in place, without changing its position
+    public NBTInputStream(ByteBuffer buffer) {
+        this.in = InputStream.nullInputStream();
+        this.external = true;
+        if (buffer.hasArray()) {
+            this.buffer = buffer.array();
+            this.position = buffer.arrayOffset() + buffer.position();
+            this.limit = buffer.arrayOffset() + buffer.limit();
+        } else {
+            this.source = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+            this.position = buffer.position();
+            this.limit = buffer.limit();
+        }
     }
 
     public NBTCompound readRootCompound() throws IOException {
@@ -30,7 +116,7 @@ public class NBTInputStream extends InputStream {
         NBT.Tag tag = readTag();
         if (tag != NBT.Tag.COMPOUND)
             throw new NBTException("Expected " + NBT.Tag.COMPOUND.getTypeName() + ", but got " + tag.getTypeName());
-        if (hasRootName) readString().revert();
+        if (hasRootName) readStringValue();
         return readCompound();
     }
 
@@ -39,63 +125,165 @@ public class NBTInputStream extends InputStream {
     }
 
     public NBTByte readByte() throws IOException {
-        return new NBTByte(read());
+        return NBTByte.valueOf(readByteValue());
     }
 
     public NBTShort readShort() throws IOException {
-        return new NBTShort(read() << Byte.SIZE | read());
+        return NBTShort.valueOf(readShortValue());
     }
 
     public NBTInt readInt() throws IOException {
-        int value = 0;
-        for (int i = Integer.BYTES - 1; i >= 0; i--)
-            value |= read() << Byte.SIZE * i;
-        return new NBTInt(value);
+        return NBTInt.valueOf(readIntValue());
     }
 
     public NBTLong readLong() throws IOException {
-        long value = 0;
-        for (int i = Long.BYTES - 1; i >= 0; i--)
-            value |= (long) read() << Byte.SIZE * i;
-        return new NBTLong(value);
+        return new NBTLong(readLongValue());
     }
 
     public NBTFloat readFloat() throws IOException {
-        return new NBTFloat(Float.intBitsToFloat(readInt().revert()));
+        return NBTFloat.valueOf(readFloatValue());
     }
 
     public NBTDouble readDouble() throws IOException {
-        return new NBTDouble(Double.longBitsToDouble(readLong().revert()));
+        return NBTDouble.valueOf(readDoubleValue());
     }
 
     public NBTString readString() throws IOException {
-        short length = (short) (read() << Byte.SIZE | read());
-        return new NBTString(new String(readNBytes(length), StandardCharsets.UTF_8));
+        return new NBTString(readStringValue());
     }
 
     public NBTByteArray readByteArray() throws IOException {
-        return new NBTByteArray(readNBytes(readInt().revert()));
+        return DecoderAccess.byteArray(readByteArrayValue());
     }
 
     public NBTIntArray readIntArray() throws IOException {
-        int length = readInt().revert();
-        int[] array = new int[length];
-        for (int i = 0; i < length; i++)
-            array[i] = readInt().revert();
-        return new NBTIntArray(array);
+        return DecoderAccess.intArray(readIntArrayValue());
     }
 
     public NBTLongArray readLongArray() throws IOException {
-        int length = readInt().revert();
-        long[] array = new long[length];
-        for (int i = 0; i < length; i++)
-            array[i] = readLong().revert();
-        return new NBTLongArray(array);
+        return DecoderAccess.longArray(readLongArrayValue());
+    }
+
+    public byte readByteValue() throws IOException {
+        require(Byte.BYTES);
+        return byteAt(position++);
+    }
+
+    public short readShortValue() throws IOException {
+        require(Short.BYTES);
+        short value = buffer != null ? (short) SHORT_HANDLE.get(buffer, position) : source.getShort(position);
+        position += Short.BYTES;
+        return value;
+    }
+
+    public int readUnsignedShortValue() throws IOException {
+        return readShortValue() & 0xFFFF;
+    }
+
+    public int readIntValue() throws IOException {
+        require(Integer.BYTES);
+        int value = buffer != null ? (int) INT_HANDLE.get(buffer, position) : source.getInt(position);
+        position += Integer.BYTES;
+        return value;
+    }
+
+    public long readLongValue() throws IOException {
+        require(Long.BYTES);
+        long value = buffer != null ? (long) LONG_HANDLE.get(buffer, position) : source.getLong(position);
+        position += Long.BYTES;
+        return value;
+    }
+
+    public float readFloatValue() throws IOException {
+        return Float.intBitsToFloat(readIntValue());
+    }
+
+    public double readDoubleValue() throws IOException {
+        return Double.longBitsToDouble(readLongValue());
+    }
+
+    public String readStringValue() throws IOException {
+        return readString(valueTable);
+    }
+
+    String readKeyValue() throws IOException {
+        return readString(keyTable);
+    }
+
+    public byte[] readByteArrayValue() throws IOException {
+        return readPayload(readLength());
+    }
+
+    public int[] readIntArrayValue() throws IOException {
+        return readInts(readLength());
+    }
+
+    public long[] readLongArrayValue() throws IOException {
+        return readLongs(readLength());
+    }
+
+    public void skipNBT(NBT.Tag tag) throws IOException {
+        switch (tag) {
+            case END -> {}
+            case BYTE -> skipNBytes(Byte.BYTES);
+            case SHORT -> skipNBytes(Short.BYTES);
+            case INT, FLOAT -> skipNBytes(Integer.BYTES);
+            case LONG, DOUBLE -> skipNBytes(Long.BYTES);
+            case BYTE_ARRAY -> skipNBytes(readLength());
+            case STRING -> skipNBytes(readUnsignedShortValue());
+            case INT_ARRAY -> skipNBytes((long) readLength() * Integer.BYTES);
+            case LONG_ARRAY -> skipNBytes((long) readLength() * Long.BYTES);
+            case LIST -> {
+                NBT.Tag elementType = readTag();
+                int length = readLength();
+                for (int i = 0; i < length; i++)
+                    skipNBT(elementType);
+            }
+            case COMPOUND -> {
+                NBT.Tag entryType;
+                while ((entryType = readTag()) != NBT.Tag.END) {
+                    skipNBytes(readUnsignedShortValue());
+                    skipNBT(entryType);
+                }
+            }
+        }
     }
 
     public NBTList readList() throws IOException {
         NBT.Tag elementType = readTag();
-        int length = readInt().revert();
+        return readListElements(elementType, readIntValue());
+    }
+
+    // reads the elements of a list whose element type and length have already been read
+    public NBTList readListElements(NBT.Tag elementType, int length) throws IOException {
+        if (length < 0) throw new NBTException("Negative length " + length);
+        // numeric elements are decoded in bulk into the unboxed storage of the list
+        switch (elementType) {
+            case BYTE -> {
+                return DecoderAccess.byteList(readPayload(length));
+            }
+            case SHORT -> {
+                short[] array = new short[length];
+                readElements(length, Short.BYTES, (slice, offset, count) -> slice.asShortBuffer().get(array, offset, count));
+                return DecoderAccess.shortList(array);
+            }
+            case INT -> {
+                return DecoderAccess.intList(readInts(length));
+            }
+            case LONG -> {
+                return DecoderAccess.longList(readLongs(length));
+            }
+            case FLOAT -> {
+                float[] array = new float[length];
+                readElements(length, Float.BYTES, (slice, offset, count) -> slice.asFloatBuffer().get(array, offset, count));
+                return DecoderAccess.floatList(array);
+            }
+            case DOUBLE -> {
+                double[] array = new double[length];
+                readElements(length, Double.BYTES, (slice, offset, count) -> slice.asDoubleBuffer().get(array, offset, count));
+                return DecoderAccess.doubleList(array);
+            }
+        }
         NBTList list = new NBTList(elementType);
         for (int i = 0; i < length; i++)
             list.add(readNBT(elementType));
@@ -103,98 +291,431 @@ public class NBTInputStream extends InputStream {
     }
 
     public NBTCompound readCompound() throws IOException {
-        NBTCompound compound = new NBTCompound();
-        NBT<?> value;
-        while (true) {
-            NBT.Tag tag = readTag();
-            if (tag == NBT.Tag.END) break;
-            String key = readString().revert();
-            value = readNBT(tag);
-            compound.set(key, value);
+        if (lazy && external) return readLazyCompound();
+        // entries are collected first, so the compound can be created with its final size
+        if (compoundDepth == compoundScratch.length) {
+            compoundScratch = Arrays.copyOf(compoundScratch, Math.max(4, compoundDepth * 2));
+            scalarScratch = Arrays.copyOf(scalarScratch, compoundScratch.length);
+        }
+        Object[] entries = compoundScratch[compoundDepth];
+        if (entries == null) {
+            compoundScratch[compoundDepth] = entries = new Object[16];
+            scalarScratch[compoundDepth] = new long[8];
         }
-        return compound;
+        long[] scalars = scalarScratch[compoundDepth];
+        compoundDepth++;
+        int count = 0;
+        try {
+            while (true) {
+                NBT.Tag tag = readTag();
+                if (tag == NBT.Tag.END) break;
+                String key = readKeyValue();
+                if (count == entries.length) {
+                    compoundScratch[compoundDepth - 1] = entries = Arrays.copyOf(entries, count * 2);
+                    scalarScratch[compoundDepth - 1] = scalars = Arrays.copyOf(scalars, count);
+                }
+                entries[count++] = key;
+                switch (tag) {
+                    case BYTE -> scalars[count / 2] = readByteValue();
+                    case SHORT -> scalars[count / 2] = readShortValue();
+                    case INT, FLOAT -> scalars[count / 2] = readIntValue();
+                    case LONG, DOUBLE -> scalars[count / 2] = readLongValue();
+                    default -> {
+                        entries[count++] = readNBT(tag);
+                        continue;
+                    }
+                }
+                entries[count++] = tag;
+            }
+            NBTCompound compound = new NBTCompound(count / 2);
+            for (int i = 0; i < count; i += 2) {
+                String key = (String) entries[i];
+                long bits = scalars[i / 2];
+                switch (entries[i + 1]) {
+                    case NBT.Tag.BYTE -> compound.setByte(key, (byte) bits);
+                    case NBT.Tag.SHORT -> compound.setShort(key, (short) bits);
+                    case NBT.Tag.INT -> compound.setInt(key, (int) bits);
+                    case NBT.Tag.LONG -> compound.setLong(key, bits);
+                    case NBT.Tag.FLOAT -> compound.setFloat(key, Float.intBitsToFloat((int) bits));
+                    case NBT.Tag.DOUBLE -> compound.setDouble(key, Double.longBitsToDouble(bits));
+                    case Object value -> compound.set(key, value);
+                }
+            }
+            return compound;
+        } finally {
+            Arrays.fill(entries, 0, count, null);
+            compoundDepth--;
+        }
+    }
+
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    // compounds read from array or buffer sources decode their values only when they are accessed
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    public @Nullable NBTStringTable getKeyTable() {
+        return keyTable;
+    }
+
+    // table used to canonicalize compound keys, the shared table by default
+    public void setKeyTable(@Nullable NBTStringTable keyTable) {
+        this.keyTable = keyTable;
+    }
+
+    public @Nullable NBTStringTable getValueTable() {
+        return valueTable;
+    }
+
+    // table used to canonicalize string values, none by default
+    public void setValueTable(@Nullable NBTStringTable valueTable) {
+        this.valueTable = valueTable;
     }
 
     public NBT.Tag readTag() throws IOException {
-        return NBT.Tag.values()[read()];
+        require(Byte.BYTES);
+        return NBT.Tag.fromID(byteAt(position++));
     }
 
     @Override
     public int read() throws IOException {
-        return in.read();
+        if (position == limit && !fill(1)) return -1;
+        return byteAt(position++) & 0xFF;
     }
 
     @Override
     public int read(byte @NotNull [] b) throws IOException {
-        return in.read(b);
+        return read(b, 0, b.length);
     }
 
     @Override
     public int read(byte @NotNull [] b, int off, int len) throws IOException {
-        return in.read(b, off, len);
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) return 0;
+        int buffered = limit - position;
+        if (buffered == 0) {
+            // large reads bypass the buffer entirely
+            if (!external && len >= buffer.length) {
+                release();
+                return in.read(b, off, len);
+            }
+            if (!fill(1, len)) return -1;
+            buffered = limit - position;
+        }
+        int n = Math.min(buffered, len);
+        copy(position, b, off, n);
+        position += n;
+        return n;
     }
 
     @Override
     public byte[] readAllBytes() throws IOException {
-        return in.readAllBytes();
+        byte[] buffered = drain();
+        release();
+        byte[] remaining = in.readAllBytes();
+        if (buffered.length == 0) return remaining;
+        byte[] bytes = Arrays.copyOf(buffered, buffered.length + remaining.length);
+        System.arraycopy(remaining, 0, bytes, buffered.length, remaining.length);
+        return bytes;
     }
 
     @Override
     public byte[] readNBytes(int len) throws IOException {
-        return in.readNBytes(len);
+        if (len < 0) throw new IllegalArgumentException("len < 0");
+        if (len <= limit - position) {
+            byte[] bytes = new byte[len];
+            copy(position, bytes, 0, len);
+            position += len;
+            return bytes;
+        }
+        return super.readNBytes(len);
     }
 
     @Override
     public int readNBytes(byte[] b, int off, int len) throws IOException {
-        return in.readNBytes(b, off, len);
+        Objects.checkFromIndexSize(off, len, b.length);
+        int n = Math.min(limit - position, len);
+        copy(position, b, off, n);
+        position += n;
+        if (n < len) {
+            release();
+            n += in.readNBytes(b, off + n, len - n);
+        }
+        return n;
     }
 
     @Override
     public long skip(long n) throws IOException {
-        return in.skip(n);
+        if (n <= 0) return 0;
+        int buffered = limit - position;
+        if (buffered >= n) {
+            position += (int) n;
+            return n;
+        }
+        position = limit;
+        release();
+        return buffered + in.skip(n - buffered);
     }
 
     @Override
     public void skipNBytes(long n) throws IOException {
-        in.skipNBytes(n);
+        if (n <= 0) return;
+        int buffered = limit - position;
+        if (buffered >= n) {
+            position += (int) n;
+            return;
+        }
+        position = limit;
+        release();
+        in.skipNBytes(n - buffered);
     }
 
     @Override
     public int available() throws IOException {
-        return in.available();
+        int buffered = limit - position;
+        int available = in.available();
+        return buffered > Integer.MAX_VALUE - available ? Integer.MAX_VALUE : buffered + available;
     }
 
     @Override
     public void close() throws IOException {
+        position = limit;
         in.close();
     }
 
     @Override
-    public void mark(int readlimit) {
-        in.mark(readlimit);
+    public boolean markSupported() {
+        return false;
     }
 
     @Override
-    public void reset() throws IOException {
+    public long transferTo(OutputStream out) throws IOException {
+        int buffered = limit - position;
+        if (buffer != null) {
+            out.write(buffer, position, buffered);
+            position = limit;
+        } else {
+            out.write(drain());
+        }
+        release();
+        return buffered + in.transferTo(out);
+    }
+
+    private LazyNBTCompound readLazyCompound() throws IOException {
+        int start = position;
+        Map<String, LazyNBTCompound.Slot> slots = new HashMap<>();
+        while (true) {
+            NBT.Tag tag = readTag();
+            if (tag == NBT.Tag.END) break;
+            String key = readKeyValue();
+            int offset = position;
+            skipNBT(tag);
+            slots.put(key, new LazyNBTCompound.Slot(tag, offset, position - offset));
+        }
+        return DecoderAccess.lazyCompound(new Backing(buffer, source), start, position - start, slots);
+    }
+
+    private String readString(@Nullable NBTStringTable table) throws IOException {
+        int length = readUnsignedShortValue();
+        require(length);
+        byte[] bytes = buffer;
+        int offset = position;
+        if (bytes == null) {
+            // strings from buffers without an accessible array are copied out first
+            if (scratch == null || scratch.length < length) scratch = new byte[Math.max(length, 64)];
+            bytes = scratch;
+            offset = 0;
+            source.get(position, bytes, 0, length);
+        }
+        String value = table != null ? table.get(bytes, offset, length) : ModifiedUTF8.decode(bytes, offset, length);
+        position += length;
+        return value;
+    }
+
+    private int[] readInts(int length) throws IOException {
+        int[] array = new int[length];
+        readElements(length, Integer.BYTES, (slice, offset, count) -> slice.asIntBuffer().get(array, offset, count));
+        return array;
+    }
+
+    private long[] readLongs(int length) throws IOException {
+        long[] array = new long[length];
+        readElements(length, Long.BYTES, (slice, offset, count) -> slice.asLongBuffer().get(array, offset, count));
+        return array;
+    }
+
+    // passes the big-endian elements to the reader in as few slices of the buffer as possible
+    private void readElements(int length, int width, ElementReader reader) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            require(width, (int) Math.min((long) (length - offset) * width, Integer.MAX_VALUE));
+            int count = Math.min(length - offset, (limit - position) / width);
+            reader.read(slice(count * width), offset, count);
+            position += count * width;
+            offset += count;
+        }
+    }
+
+    private int readLength() throws IOException {
+        int length = readIntValue();
+        if (length < 0) throw new NBTException("Negative length " + length);
+        return length;
+    }
+
+    private byte[] readPayload(int length) throws IOException {
+        byte[] bytes = readNBytes(length);
+        if (bytes.length != length) throw new EOFException("Unexpected end of NBT data");
+        return bytes;
+    }
+
+    private void require(int n) throws IOException {
+        require(n, n);
+    }
+
+    private void require(int n, int wanted) throws IOException {
+        if (limit - position < n && !fill(n, wanted))
+            throw new EOFException("Unexpected end of NBT data");
+    }
+
+    private boolean fill(int n) throws IOException {
+        return fill(n, n);
+    }
+
+    // compacts the buffer and reads from the underlying stream until at least n bytes are buffered;
+    // without read ahead, no more than the wanted bytes are buffered so the stream stays at the
+    // end of the NBT data
+    private boolean fill(int n, int wanted) throws IOException {
+        int buffered = limit - position;
+        if (external) return buffered >= n;
+        if (buffer.length < n) buffer = Arrays.copyOf(buffer, Math.max(n, buffer.length * 2));
+        if (readAhead && in.markSupported()) {
+            // the buffered bytes are read again, so that the mark stays at the first byte of the buffer
+            release();
+            in.mark(buffer.length);
+            marked = true;
+        } else if (position != 0) {
+            System.arraycopy(buffer, position, buffer, 0, buffered);
+            position = 0;
+            limit = buffered;
+        }
+        int end = readAhead ? buffer.length : Math.min(buffer.length, Math.max(n, wanted));
+        while (limit < n) {
+            int read = in.read(buffer, limit, end - limit);
+            if (read < 0) return false;
+            limit += read;
+        }
+        return true;
+    }
+
+    // moves a stream that is read ahead with mark and reset back to the end of the bytes consumed
+    // so far and drops the ones after them from the buffer, see NBTInputStream(InputStream, int, boolean)
+    public void release() throws IOException {
+        if (!marked) return;
         in.reset();
+        in.skipNBytes(position);
+        position = limit = 0;
+        marked = false;
     }
 
-    @Override
-    public boolean markSupported() {
-        return in.markSupported();
+    private byte byteAt(int index) {
+        return buffer != null ? buffer[index] : source.get(index);
     }
 
-    @Override
-    public long transferTo(OutputStream out) throws IOException {
-        return in.transferTo(out);
+    private void copy(int index, byte[] destination, int offset, int length) {
+        if (buffer != null) System.arraycopy(buffer, index, destination, offset, length);
+        else source.get(index, destination, offset, length);
+    }
+
+    private ByteBuffer slice(int length) {
+        return buffer != null ? ByteBuffer.wrap(buffer, position, length) : source.slice(position, length);
     }
 
-    private void unzipIfNecessary() throws IOException {
-        in = new PushbackInputStream(in, 2);
-        byte[] header = in.readNBytes(2);
-        ((PushbackInputStream) in).unread(header);
-        if (Arrays.equals(GZIP_HEADER_BYTES, header))
-            in = new GZIPInputStream(in);
+    private byte[] drain() {
+        byte[] bytes = new byte[limit - position];
+        copy(position, bytes, 0, bytes.length);
+        position = limit;
+        return bytes;
+    }
+
+    void unzipIfNecessary() throws IOException {
+        if (limit - position < GZIP_HEADER_BYTES.length && !fill(GZIP_HEADER_BYTES.length)) return;
+        if (byteAt(position) != GZIP_HEADER_BYTES[0] || byteAt(position + 1) != GZIP_HEADER_BYTES[1]) return;
+        InputStream compressed;
+        if (!external)
+            compressed = new SequenceInputStream(new ByteArrayInputStream(drain()), in);
+        else if (buffer != null)
+            compressed = new ByteArrayInputStream(buffer, position, limit - position);
+        else
+            compressed = new ByteBufferInputStream(slice(limit - position));
+        // the inflater reads ahead in any case
+        in = new GZIPInputStream(compressed);
+        readAhead = true;
+        marked = false;
+        if (external || buffer.length < DEFAULT_BUFFER_SIZE) buffer = new byte[DEFAULT_BUFFER_SIZE];
+        source = null;
+        external = false;
+        position = limit = 0;
+    }
+
+    private record Backing(byte[] array, ByteBuffer buffer) implements LazyNBTCompound.Source {
+
+        @Override
+        public NBT<?> decode(NBT.Tag tag, int offset, int length) throws IOException {
+            NBTInputStream stream = array != null ? new NBTInputStream(array, offset, length) : new NBTInputStream(buffer.slice(offset, length));
+            stream.setLazy(true);
+            return stream.readNBT(tag);
+        }
+
+        @Override
+        public void transfer(int offset, int length, OutputStream out) throws IOException {
+            if (array != null) {
+                out.write(array, offset, length);
+                return;
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(offset, bytes);
+            out.write(bytes);
+        }
+
+    }
+
+    private interface ElementReader {
+
+        void read(ByteBuffer slice, int offset, int count);
+
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte @NotNull [] b, int off, int len) {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
     }
 
 }
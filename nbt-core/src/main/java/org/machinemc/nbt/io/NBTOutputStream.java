@@ -5,21 +5,111 @@ import org.machinemc.nbt.NBTList;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.machinemc.nbt.NBT;
+import org.machinemc.nbt.exceptions.NBTException;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteOrder;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Map;
+import java.util.Objects;
 import java.util.zip.GZIPOutputStream;
 
 public class NBTOutputStream extends OutputStream {
 
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private static final Comparator<Object> ENTRY_ORDER = Comparator.comparing(entry -> ((Map.Entry<?, ?>) entry).getKey().toString());
+
+    private static final VarHandle SHORT_HANDLE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INT_HANDLE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG_HANDLE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle SHORT_BUFFER_HANDLE = MethodHandles.byteBufferViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INT_BUFFER_HANDLE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG_BUFFER_HANDLE = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
     private final OutputStream out;
+    private final @Nullable WritableByteChannel channel;
+
+    // bytes in [0, position) of the buffer are written but not yet passed to 'out' or the channel
+    private byte[] buffer;
+    private int position;
+    private int limit;
+
+    // when writing into a ByteBuffer, positions are indices of its backing array,
+    // or of the buffer itself if it has no accessible array (buffer is null then)
+    private @Nullable ByteBuffer target;
+    private int base;
+    private boolean growable;
+
+    private boolean canonical;
+    // keys or entries of the compounds that are being written in canonical order, reused for each nesting depth
+    private Object[][] sortScratch = new Object[0][];
+    private int sortDepth;
 
     public NBTOutputStream(OutputStream out, boolean compress) throws IOException {
-        this.out = compress ? new GZIPOutputStream(out) : out;
+        this(out, compress, DEFAULT_BUFFER_SIZE);
+    }
+
+    public NBTOutputStream(OutputStream out, boolean compress, int bufferSize) throws IOException {
+        if (bufferSize < Long.BYTES)
+            throw new IllegalArgumentException("Buffer size must be at least " + Long.BYTES + " bytes");
+        this.out = compress ? new GZIPOutputStream(out, bufferSize) : out;
+        this.channel = null;
+        this.buffer = new byte[bufferSize];
+        this.limit = bufferSize;
+    }
+
+    public NBTOutputStream(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    public NBTOutputStream(WritableByteChannel channel, int bufferSize) {
+        if (bufferSize < Long.BYTES)
+            throw new IllegalArgumentException("Buffer size must be at least " + Long.BYTES + " bytes");
+        this.out = OutputStream.nullOutputStream();
+        this.channel = Objects.requireNonNull(channel, "channel");
+        this.buffer = new byte[bufferSize];
+        this.limit = bufferSize;
+    }
+
+    public NBTOutputStream(ByteBuffer target) {
+        this(target, false);
+    }
+
+    // writes from the position of the buffer up to its limit, which throws a BufferOverflowException
+    // unless the stream is growable, then the buffer is replaced by a larger copy (see getBuffer());
+    // the position of the buffer is updated on flush()
+    public NBTOutputStream(ByteBuffer target, boolean growable) {
+        this.out = OutputStream.nullOutputStream();
+        this.channel = null;
+        this.growable = growable;
+        bind(target);
+    }
+
+    public boolean isCanonical() {
+        return canonical;
+    }
+
+    // entries of compounds are written in the order of their keys, so equal values always produce equal bytes;
+    // floating point values are written with all NaNs collapsed into the canonical NaN in either mode
+    public void setCanonical(boolean canonical) {
+        this.canonical = canonical;
+    }
+
+    // the target buffer with its position after the written bytes
+    public ByteBuffer getBuffer() {
+        if (target == null) throw new IllegalStateException("Stream does not write into a ByteBuffer");
+        target.position(position - base);
+        return target;
     }
 
     public void writeRootCompound(@Nullable NBTCompound compound) throws IOException {
@@ -36,6 +126,7 @@ public class NBTOutputStream extends OutputStream {
             if (rootName != null) writeObject(rootName);
             writeNBT(compound);
         } finally {
+            flushBuffer();
             if (out instanceof GZIPOutputStream gzip) gzip.finish();
         }
     }
@@ -51,26 +142,35 @@ public class NBTOutputStream extends OutputStream {
     }
 
     public void writeTag(NBT.Tag tag) throws IOException {
-        write(tag.getID());
+        writeByte((byte) tag.getID());
     }
 
     public void writeByte(byte value) throws IOException {
-        write(value);
+        require(Byte.BYTES);
+        if (buffer != null) buffer[position] = value;
+        else target.put(position, value);
+        position++;
     }
 
     public void writeShort(short value) throws IOException {
-        write(value >>> Byte.SIZE);
-        write(value & 0xFF);
+        require(Short.BYTES);
+        if (buffer != null) SHORT_HANDLE.set(buffer, position, value);
+        else SHORT_BUFFER_HANDLE.set(target, position, value);
+        position += Short.BYTES;
     }
 
     public void writeInt(int value) throws IOException {
-        for (int i = Integer.BYTES - 1; i >= 0; i--)
-            write((byte) (value >>> i * Byte.SIZE & 0xFF));
+        require(Integer.BYTES);
+        if (buffer != null) INT_HANDLE.set(buffer, position, value);
+        else INT_BUFFER_HANDLE.set(target, position, value);
+        position += Integer.BYTES;
     }
 
     public void writeLong(long value) throws IOException {
-        for (int i = Long.BYTES - 1; i >= 0; i--)
-            write((byte) (value >>> i * Byte.SIZE & 0xFF));
+        require(Long.BYTES);
+        if (buffer != null) LONG_HANDLE.set(buffer, position, value);
+        else LONG_BUFFER_HANDLE.set(target, position, value);
+        position += Long.BYTES;
     }
 
     public void writeFloat(float value) throws IOException {
@@ -82,10 +182,22 @@ public class NBTOutputStream extends OutputStream {
     }
 
     public void writeString(String value) throws IOException {
-        int length = value == null ? 0 : value.length();
+        if (value == null || value.isEmpty()) {
+            writeShort((short) 0);
+            return;
+        }
+        int length = ModifiedUTF8.encodedLength(value);
+        if (length > ModifiedUTF8.MAX_LENGTH)
+            throw new NBTException("String is too long to be encoded, " + length + " > " + ModifiedUTF8.MAX_LENGTH + " bytes");
         writeShort((short) length);
-        if (length < 1) return;
-        write(value.getBytes(StandardCharsets.UTF_8));
+        if (buffer != null && (target != null || length <= buffer.length)) {
+            require(length);
+            position = ModifiedUTF8.encode(value, buffer, position);
+            return;
+        }
+        byte[] bytes = new byte[length];
+        ModifiedUTF8.encode(value, bytes, 0);
+        write(bytes);
     }
 
     public void writeByteArray(byte[] value) throws IOException {
@@ -94,6 +206,13 @@ public class NBTOutputStream extends OutputStream {
             return;
         }
         writeInt(value.length);
+        if (channel instanceof GatheringByteChannel gathering && value.length >= buffer.length) {
+            // pending bytes and the payload are passed to the channel together, without copying the payload
+            ByteBuffer[] sources = {ByteBuffer.wrap(buffer, 0, position), ByteBuffer.wrap(value)};
+            while (sources[1].hasRemaining()) gathering.write(sources);
+            position = 0;
+            return;
+        }
         write(value);
     }
 
@@ -103,8 +222,15 @@ public class NBTOutputStream extends OutputStream {
             return;
         }
         writeInt(value.length);
-        for (int i : value)
-            writeInt(i);
+        if (target != null) require(Math.multiplyExact(value.length, Integer.BYTES));
+        int offset = 0;
+        while (offset < value.length) {
+            require(Integer.BYTES);
+            int count = Math.min(value.length - offset, (limit - position) / Integer.BYTES);
+            slice(count * Integer.BYTES).asIntBuffer().put(value, offset, count);
+            position += count * Integer.BYTES;
+            offset += count;
+        }
     }
 
     public void writeLongArray(long[] value) throws IOException {
@@ -113,31 +239,112 @@ public class NBTOutputStream extends OutputStream {
             return;
         }
         writeInt(value.length);
-        for (long i : value)
-            writeLong(i);
+        if (target != null) require(Math.multiplyExact(value.length, Long.BYTES));
+        int offset = 0;
+        while (offset < value.length) {
+            require(Long.BYTES);
+            int count = Math.min(value.length - offset, (limit - position) / Long.BYTES);
+            slice(count * Long.BYTES).asLongBuffer().put(value, offset, count);
+            position += count * Long.BYTES;
+            offset += count;
+        }
     }
 
     public void writeList(Collection<?> value) throws IOException {
-        if (value == null) {
+        if (value == null || value.isEmpty()) {
             writeEnd();
             writeInt(0);
             return;
         }
-        NBTList list = (NBTList) NBT.convert(new ArrayList<>(value));
-        assert list != null;
-        writeTag(list.getElementType());
-        writeInt(list.size());
-        for (NBT<?> nbt : list)
+        NBT.Tag type = null;
+        for (Object element : value) {
+            NBT<?> nbt = convert(element);
+            if (type == null) {
+                type = nbt.tag();
+                writeTag(type);
+                writeInt(value.size());
+            } else if (nbt.tag() != type) {
+                throw new NBTException("Lists may contain one type of value. This is marked for '" + type.getTypeName() + "'");
+            }
             writeNBT(nbt);
+        }
+    }
+
+    public void writeList(NBTList value) throws IOException {
+        if (value == null || value.isEmpty()) {
+            writeEnd();
+            writeInt(0);
+            return;
+        }
+        writeTag(value.getElementType());
+        writeInt(value.size());
+        for (NBT<?> nbt : value)
+            nbt.write(this);
     }
 
     public void writeCompound(Map<?, ?> value) throws IOException {
-        NBTCompound compound = (NBTCompound) NBT.convert(value);
-        assert compound != null;
-        for (Map.Entry<String, NBT<?>> entry : compound) {
-            writeTag(entry.getValue().tag());
-            writeString(entry.getKey());
-            writeNBT(entry.getValue());
+        if (canonical && value != null && value.size() > 1) {
+            Object[] entries = sortScratch(value.size());
+            int size = 0;
+            for (Map.Entry<?, ?> entry : value.entrySet()) {
+                if (entry.getKey() == null) throw new NBTException("Compounds cannot have null keys");
+                entries[size++] = entry;
+            }
+            Arrays.sort(entries, 0, size, ENTRY_ORDER);
+            try {
+                for (int i = 0; i < size; i++) {
+                    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) entries[i];
+                    NBT<?> nbt = convert(entry.getValue());
+                    writeTag(nbt.tag());
+                    writeString(entry.getKey().toString());
+                    nbt.write(this);
+                }
+            } finally {
+                releaseSortScratch(entries, size);
+            }
+            writeEnd();
+            return;
+        }
+        if (value != null) {
+            for (Map.Entry<?, ?> entry : value.entrySet()) {
+                if (entry.getKey() == null) throw new NBTException("Compounds cannot have null keys");
+                NBT<?> nbt = convert(entry.getValue());
+                writeTag(nbt.tag());
+                writeString(entry.getKey().toString());
+                nbt.write(this);
+            }
+        }
+        writeEnd();
+    }
+
+    public void writeCompound(NBTCompound value) throws IOException {
+        if (canonical && value != null && value.size() > 1) {
+            Object[] keys = sortScratch(value.size());
+            int size = 0;
+            for (String key : value.keySet())
+                keys[size++] = key;
+            Arrays.sort(keys, 0, size);
+            try {
+                for (int i = 0; i < size; i++) {
+                    String key = (String) keys[i];
+                    NBT<?> nbt = value.getNBT(key);
+                    writeTag(nbt.tag());
+                    writeString(key);
+                    nbt.write(this);
+                }
+            } finally {
+                releaseSortScratch(keys, size);
+            }
+            writeEnd();
+            return;
+        }
+        if (value != null) {
+            for (Map.Entry<String, NBT<?>> entry : value) {
+                NBT<?> nbt = entry.getValue();
+                writeTag(nbt.tag());
+                writeString(entry.getKey());
+                nbt.write(this);
+            }
         }
         writeEnd();
     }
@@ -148,27 +355,119 @@ public class NBTOutputStream extends OutputStream {
 
     @Override
     public void write(int b) throws IOException {
-        out.write(b);
+        writeByte((byte) b);
     }
 
     @Override
     public void write(byte @NotNull [] b) throws IOException {
-        out.write(b);
+        write(b, 0, b.length);
     }
 
     @Override
     public void write(byte @NotNull [] b, int off, int len) throws IOException {
-        out.write(b, off, len);
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (target == null && len > limit - position) {
+            flushBuffer();
+            // large writes bypass the buffer entirely
+            if (len >= buffer.length) {
+                if (channel != null) writeFully(ByteBuffer.wrap(b, off, len));
+                else out.write(b, off, len);
+                return;
+            }
+        }
+        require(len);
+        if (buffer != null) System.arraycopy(b, off, buffer, position, len);
+        else target.put(position, b, off, len);
+        position += len;
     }
 
     @Override
     public void flush() throws IOException {
+        flushBuffer();
         out.flush();
     }
 
     @Override
     public void close() throws IOException {
-        out.close();
+        try {
+            flushBuffer();
+        } finally {
+            out.close();
+            if (channel != null) channel.close();
+        }
+    }
+
+    private static NBT<?> convert(Object object) {
+        NBT<?> nbt = NBT.convert(object);
+        if (nbt == null) throw new IllegalArgumentException("Cannot write object '" + object + "' as NBT");
+        if (nbt.tag() == NBT.Tag.END) throw new NBTException(NBT.Tag.END.getTypeName() + " cannot be used as a value");
+        return nbt;
+    }
+
+    private Object[] sortScratch(int size) {
+        if (sortDepth == sortScratch.length)
+            sortScratch = Arrays.copyOf(sortScratch, Math.max(4, sortDepth * 2));
+        Object[] scratch = sortScratch[sortDepth];
+        if (scratch == null || scratch.length < size)
+            sortScratch[sortDepth] = scratch = new Object[Math.max(size, 16)];
+        sortDepth++;
+        return scratch;
+    }
+
+    private void releaseSortScratch(Object[] scratch, int size) {
+        // the scratch array outlives the written compound
+        Arrays.fill(scratch, 0, size, null);
+        sortDepth--;
+    }
+
+    private void require(int n) throws IOException {
+        if (limit - position >= n) return;
+        if (target == null) flushBuffer();
+        else if (growable) grow(n);
+        else throw new BufferOverflowException();
+    }
+
+    private void flushBuffer() throws IOException {
+        if (target != null) {
+            target.position(position - base);
+            return;
+        }
+        if (position == 0) return;
+        if (channel != null) writeFully(ByteBuffer.wrap(buffer, 0, position));
+        else out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    private void writeFully(ByteBuffer source) throws IOException {
+        assert channel != null;
+        while (source.hasRemaining()) channel.write(source);
+    }
+
+    private ByteBuffer slice(int length) {
+        return buffer != null ? ByteBuffer.wrap(buffer, position, length) : target.slice(position, length);
+    }
+
+    private void bind(ByteBuffer target) {
+        this.target = target;
+        if (target.hasArray()) {
+            buffer = target.array();
+            base = target.arrayOffset();
+        } else {
+            buffer = null;
+            base = 0;
+        }
+        position = base + target.position();
+        limit = base + target.limit();
+    }
+
+    private void grow(int n) {
+        assert target != null;
+        int written = position - base;
+        int capacity = Math.max(Math.addExact(written, n), target.capacity() * 2);
+        ByteBuffer grown = target.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        grown.order(target.order());
+        grown.put(target.duplicate().position(0).limit(written));
+        bind(grown);
     }
 
 }
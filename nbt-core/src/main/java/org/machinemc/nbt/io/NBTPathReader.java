@@ -0,0 +1,90 @@
+package org.machinemc.nbt.io;
+
+import org.machinemc.nbt.NBT;
+import org.machinemc.nbt.NBTCompound;
+import org.machinemc.nbt.exceptions.NBTException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+public class NBTPathReader {
+
+    private final Node root = new Node();
+    private final int targets;
+
+    public NBTPathReader(String... paths) {
+        this(List.of(paths));
+    }
+
+    // paths are dot separated keys relative to the root compound, e.g. 'Data.Player.Pos'
+    public NBTPathReader(Collection<String> paths) {
+        Set<String> unique = new LinkedHashSet<>(paths);
+        for (String path : unique) {
+            Node node = root;
+            for (String key : path.split("\\.", -1))
+                node = node.children.computeIfAbsent(key, k -> new Node());
+            node.path = path;
+        }
+        targets = unique.size();
+    }
+
+    public Map<String, NBT<?>> read(ByteBuffer buffer) throws IOException {
+        return read(new NBTInputStream(buffer), true);
+    }
+
+    public Map<String, NBT<?>> read(InputStream in) throws IOException {
+        return read(in, true);
+    }
+
+    // decodes only the values at the paths, siblings and payloads that cannot contain them are skipped
+    public Map<String, NBT<?>> read(InputStream in, boolean hasRootName) throws IOException {
+        NBTStreamReader reader = new NBTStreamReader(in, hasRootName);
+        NBTStreamReader.Token token = reader.nextToken();
+        if (token != NBTStreamReader.Token.START_COMPOUND)
+            throw new NBTException("Expected " + NBT.Tag.COMPOUND.getTypeName() + ", but got " + reader.currentTag().getTypeName());
+        Map<String, NBT<?>> values = new HashMap<>();
+        read(reader, root, values);
+        return values;
+    }
+
+    private boolean read(NBTStreamReader reader, Node node, Map<String, NBT<?>> values) throws IOException {
+        NBTStreamReader.Token token;
+        while ((token = reader.nextToken()) != NBTStreamReader.Token.END_COMPOUND) {
+            Node child = node.children.get(reader.currentName());
+            if (child == null) {
+                reader.skipValue();
+            } else if (child.path != null) {
+                NBT<?> value = reader.readNBT();
+                values.put(child.path, value);
+                collect(child, value, values);
+            } else if (token == NBTStreamReader.Token.START_COMPOUND) {
+                if (read(reader, child, values)) return true;
+            } else {
+                reader.skipValue();
+            }
+            if (values.size() == targets) return true;
+        }
+        return false;
+    }
+
+    // fills paths nested inside a value that was read as a whole
+    private static void collect(Node node, NBT<?> value, Map<String, NBT<?>> values) {
+        if (node.children.isEmpty() || !(value instanceof NBTCompound compound)) return;
+        node.children.forEach((key, child) -> {
+            NBT<?> nested = compound.getNBT(key);
+            if (nested == null) return;
+            if (child.path != null) values.put(child.path, nested);
+            collect(child, nested, values);
+        });
+    }
+
+    private static class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+        private String path;
+
+    }
+
+}
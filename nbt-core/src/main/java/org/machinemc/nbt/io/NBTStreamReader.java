@@ -0,0 +1,261 @@
+package org.machinemc.nbt.io;
+
+import org.jetbrains.annotations.Nullable;
+import org.machinemc.nbt.NBT;
+import org.machinemc.nbt.exceptions.NBTException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+public class NBTStreamReader implements Closeable {
+
+    private static final int INITIAL_DEPTH = 16;
+
+    private final NBTInputStream in;
+    private final boolean hasRootName;
+
+    // open containers, element type is null for compounds
+    private NBT.Tag[] elementTypes = new NBT.Tag[INITIAL_DEPTH];
+    private int[] remaining = new int[INITIAL_DEPTH];
+    private int depth;
+
+    private boolean started;
+    private Token token;
+    private NBT.Tag tag;
+    private String name;
+    // whether the payload of the current value has not been read yet
+    private boolean pending;
+
+    public NBTStreamReader(InputStream in) {
+        this(in, true);
+    }
+
+    public NBTStreamReader(InputStream in, boolean hasRootName) {
+        this.in = in instanceof NBTInputStream stream ? stream : new NBTInputStream(in);
+        this.hasRootName = hasRootName;
+    }
+
+    public Token nextToken() throws IOException {
+        if (pending) skipPayload();
+        name = null;
+
+        if (depth == 0) {
+            if (started) return setToken(Token.END_DOCUMENT, NBT.Tag.END);
+            started = true;
+            in.unzipIfNecessary();
+            NBT.Tag rootTag = in.readTag();
+            if (rootTag == NBT.Tag.END) return setToken(Token.END_DOCUMENT, NBT.Tag.END);
+            if (hasRootName) name = in.readStringValue();
+            return start(rootTag);
+        }
+
+        NBT.Tag elementType = elementTypes[depth - 1];
+        if (elementType == null) {
+            NBT.Tag entryType = in.readTag();
+            if (entryType == NBT.Tag.END) {
+                depth--;
+                return setToken(Token.END_COMPOUND, NBT.Tag.COMPOUND);
+            }
+            name = in.readKeyValue();
+            return start(entryType);
+        }
+
+        if (remaining[depth - 1] == 0) {
+            depth--;
+            return setToken(Token.END_LIST, NBT.Tag.LIST);
+        }
+        remaining[depth - 1]--;
+        return start(elementType);
+    }
+
+    public @Nullable Token currentToken() {
+        return token;
+    }
+
+    public NBT.Tag currentTag() {
+        return tag;
+    }
+
+    public @Nullable String currentName() {
+        return name;
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    public NBT.Tag listElementType() {
+        expectToken(Token.START_LIST);
+        return elementTypes[depth - 1];
+    }
+
+    public int listSize() {
+        expectToken(Token.START_LIST);
+        return remaining[depth - 1];
+    }
+
+    public byte byteValue() throws IOException {
+        expectValue(NBT.Tag.BYTE);
+        return in.readByteValue();
+    }
+
+    public short shortValue() throws IOException {
+        expectValue(NBT.Tag.SHORT);
+        return in.readShortValue();
+    }
+
+    public int intValue() throws IOException {
+        expectValue(NBT.Tag.INT);
+        return in.readIntValue();
+    }
+
+    public long longValue() throws IOException {
+        expectValue(NBT.Tag.LONG);
+        return in.readLongValue();
+    }
+
+    public float floatValue() throws IOException {
+        expectValue(NBT.Tag.FLOAT);
+        return in.readFloatValue();
+    }
+
+    public double doubleValue() throws IOException {
+        expectValue(NBT.Tag.DOUBLE);
+        return in.readDoubleValue();
+    }
+
+    public String stringValue() throws IOException {
+        expectValue(NBT.Tag.STRING);
+        return in.readStringValue();
+    }
+
+    public byte[] byteArrayValue() throws IOException {
+        expectValue(NBT.Tag.BYTE_ARRAY);
+        return in.readByteArrayValue();
+    }
+
+    public int[] intArrayValue() throws IOException {
+        expectValue(NBT.Tag.INT_ARRAY);
+        return in.readIntArrayValue();
+    }
+
+    public long[] longArrayValue() throws IOException {
+        expectValue(NBT.Tag.LONG_ARRAY);
+        return in.readLongArrayValue();
+    }
+
+    // reads the whole current value, including the remaining content of a container that was just started
+    public NBT<?> readNBT() throws IOException {
+        if (token == Token.VALUE) {
+            if (!pending) throw new NBTException("Value of the current token has already been read");
+            pending = false;
+            return in.readNBT(tag);
+        }
+        if (token == Token.START_COMPOUND) {
+            depth--;
+            token = Token.END_COMPOUND;
+            return in.readCompound();
+        }
+        expectToken(Token.START_LIST);
+        NBT.Tag elementType = elementTypes[depth - 1];
+        int size = remaining[--depth];
+        token = Token.END_LIST;
+        return in.readListElements(elementType, size);
+    }
+
+    // skips the current value, or the remaining content of a container that was just started
+    public void skipValue() throws IOException {
+        if (token == Token.VALUE) {
+            if (pending) skipPayload();
+            return;
+        }
+        if (token == Token.START_COMPOUND) {
+            depth--;
+            token = Token.END_COMPOUND;
+            in.skipNBT(NBT.Tag.COMPOUND);
+            return;
+        }
+        if (token == Token.START_LIST) {
+            NBT.Tag elementType = elementTypes[depth - 1];
+            int size = remaining[--depth];
+            token = Token.END_LIST;
+            for (int i = 0; i < size; i++)
+                in.skipNBT(elementType);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private Token start(NBT.Tag tag) throws IOException {
+        switch (tag) {
+            case COMPOUND -> {
+                push(null, 0);
+                return setToken(Token.START_COMPOUND, tag);
+            }
+            case LIST -> {
+                NBT.Tag elementType = in.readTag();
+                int size = in.readIntValue();
+                if (size < 0) throw new NBTException("Negative length " + size);
+                push(elementType, size);
+                return setToken(Token.START_LIST, tag);
+            }
+            case END -> throw new NBTException(NBT.Tag.END.getTypeName() + " cannot be used as a value");
+            default -> {
+                pending = true;
+                return setToken(Token.VALUE, tag);
+            }
+        }
+    }
+
+    private Token setToken(Token token, NBT.Tag tag) {
+        this.token = token;
+        this.tag = tag;
+        return token;
+    }
+
+    private void push(@Nullable NBT.Tag elementType, int size) {
+        if (depth == elementTypes.length) {
+            elementTypes = Arrays.copyOf(elementTypes, depth * 2);
+            remaining = Arrays.copyOf(remaining, depth * 2);
+        }
+        elementTypes[depth] = elementType;
+        remaining[depth] = size;
+        depth++;
+    }
+
+    private void skipPayload() throws IOException {
+        pending = false;
+        in.skipNBT(tag);
+    }
+
+    private void expectToken(Token expected) {
+        if (token != expected)
+            throw new NBTException("Expected " + expected + ", but current token is " + token);
+    }
+
+    private void expectValue(NBT.Tag expected) {
+        expectToken(Token.VALUE);
+        if (tag != expected)
+            throw new NBTException("Expected " + expected.getTypeName() + ", but got " + tag.getTypeName());
+        if (!pending)
+            throw new NBTException("Value of the current token has already been read");
+        pending = false;
+    }
+
+    public enum Token {
+
+        VALUE,
+        START_COMPOUND,
+        END_COMPOUND,
+        START_LIST,
+        END_LIST,
+        END_DOCUMENT
+
+    }
+
+}
@@ -0,0 +1,227 @@
+package org.machinemc.nbt.io;
+
+import org.jetbrains.annotations.Nullable;
+import org.machinemc.nbt.NBT;
+import org.machinemc.nbt.exceptions.NBTException;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+public class NBTStreamWriter implements Closeable, Flushable {
+
+    private static final int INITIAL_DEPTH = 16;
+
+    private final NBTOutputStream out;
+    private final boolean hasRootName;
+
+    // open containers, element type is null for compounds
+    private NBT.Tag[] elementTypes = new NBT.Tag[INITIAL_DEPTH];
+    private int[] remaining = new int[INITIAL_DEPTH];
+    private int depth;
+
+    private boolean started;
+
+    public NBTStreamWriter(OutputStream out) throws IOException {
+        this(out, true);
+    }
+
+    public NBTStreamWriter(OutputStream out, boolean hasRootName) throws IOException {
+        this.out = out instanceof NBTOutputStream stream ? stream : new NBTOutputStream(out, false);
+        this.hasRootName = hasRootName;
+    }
+
+    // the root value, or an element of the current list
+    public void beginCompound() throws IOException {
+        beginCompound(null);
+    }
+
+    // the root value with the given root name, or an entry of the current compound
+    public void beginCompound(@Nullable String name) throws IOException {
+        value(NBT.Tag.COMPOUND, name);
+        push(null, 0);
+    }
+
+    public void beginList(NBT.Tag elementType, int size) throws IOException {
+        beginList(null, elementType, size);
+    }
+
+    public void beginList(@Nullable String name, NBT.Tag elementType, int size) throws IOException {
+        if (size < 0) throw new NBTException("Negative length " + size);
+        if (elementType == NBT.Tag.END && size > 0)
+            throw new NBTException(NBT.Tag.END.getTypeName() + " cannot be used as a value");
+        value(NBT.Tag.LIST, name);
+        out.writeTag(elementType);
+        out.writeInt(size);
+        push(elementType, size);
+    }
+
+    // closes the current compound or list, lists have to be filled with the declared number of elements
+    public void end() throws IOException {
+        if (depth == 0) throw new NBTException("There is no open compound or list");
+        if (elementTypes[depth - 1] == null) {
+            out.writeEnd();
+        } else if (remaining[depth - 1] != 0) {
+            throw new NBTException("List is missing " + remaining[depth - 1] + " elements");
+        }
+        depth--;
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    public void writeByte(byte value) throws IOException {
+        writeByte(null, value);
+    }
+
+    public void writeByte(@Nullable String name, byte value) throws IOException {
+        value(NBT.Tag.BYTE, name);
+        out.writeByte(value);
+    }
+
+    public void writeShort(short value) throws IOException {
+        writeShort(null, value);
+    }
+
+    public void writeShort(@Nullable String name, short value) throws IOException {
+        value(NBT.Tag.SHORT, name);
+        out.writeShort(value);
+    }
+
+    public void writeInt(int value) throws IOException {
+        writeInt(null, value);
+    }
+
+    public void writeInt(@Nullable String name, int value) throws IOException {
+        value(NBT.Tag.INT, name);
+        out.writeInt(value);
+    }
+
+    public void writeLong(long value) throws IOException {
+        writeLong(null, value);
+    }
+
+    public void writeLong(@Nullable String name, long value) throws IOException {
+        value(NBT.Tag.LONG, name);
+        out.writeLong(value);
+    }
+
+    public void writeFloat(float value) throws IOException {
+        writeFloat(null, value);
+    }
+
+    public void writeFloat(@Nullable String name, float value) throws IOException {
+        value(NBT.Tag.FLOAT, name);
+        out.writeFloat(value);
+    }
+
+    public void writeDouble(double value) throws IOException {
+        writeDouble(null, value);
+    }
+
+    public void writeDouble(@Nullable String name, double value) throws IOException {
+        value(NBT.Tag.DOUBLE, name);
+        out.writeDouble(value);
+    }
+
+    public void writeString(String value) throws IOException {
+        writeString(null, value);
+    }
+
+    public void writeString(@Nullable String name, String value) throws IOException {
+        value(NBT.Tag.STRING, name);
+        out.writeString(value);
+    }
+
+    public void writeByteArray(byte[] value) throws IOException {
+        writeByteArray(null, value);
+    }
+
+    public void writeByteArray(@Nullable String name, byte[] value) throws IOException {
+        value(NBT.Tag.BYTE_ARRAY, name);
+        out.writeByteArray(value);
+    }
+
+    public void writeIntArray(int[] value) throws IOException {
+        writeIntArray(null, value);
+    }
+
+    public void writeIntArray(@Nullable String name, int[] value) throws IOException {
+        value(NBT.Tag.INT_ARRAY, name);
+        out.writeIntArray(value);
+    }
+
+    public void writeLongArray(long[] value) throws IOException {
+        writeLongArray(null, value);
+    }
+
+    public void writeLongArray(@Nullable String name, long[] value) throws IOException {
+        value(NBT.Tag.LONG_ARRAY, name);
+        out.writeLongArray(value);
+    }
+
+    public void writeNBT(NBT<?> value) throws IOException {
+        writeNBT(null, value);
+    }
+
+    // writes an already built value as a whole
+    public void writeNBT(@Nullable String name, NBT<?> value) throws IOException {
+        value(value.tag(), name);
+        out.writeNBT(value);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (depth != 0) throw new NBTException("Document is incomplete, " + depth + " containers are still open");
+        } finally {
+            out.close();
+        }
+    }
+
+    // writes the tag and name of the next value in the current container
+    private void value(NBT.Tag tag, @Nullable String name) throws IOException {
+        if (tag == NBT.Tag.END) throw new NBTException(NBT.Tag.END.getTypeName() + " cannot be used as a value");
+
+        if (depth == 0) {
+            if (started) throw new NBTException("Root value has already been written");
+            started = true;
+            out.writeTag(tag);
+            if (hasRootName) out.writeString(name != null ? name : "");
+            return;
+        }
+
+        NBT.Tag elementType = elementTypes[depth - 1];
+        if (elementType == null) {
+            if (name == null) throw new NBTException("Compounds cannot have null keys");
+            out.writeTag(tag);
+            out.writeString(name);
+            return;
+        }
+
+        if (name != null) throw new NBTException("Elements of a list cannot have names");
+        if (tag != elementType)
+            throw new NBTException("Lists may contain one type of value. This is marked for '" + elementType.getTypeName() + "'");
+        if (remaining[depth - 1] == 0) throw new NBTException("List is already full");
+        remaining[depth - 1]--;
+    }
+
+    private void push(@Nullable NBT.Tag elementType, int size) {
+        if (depth == elementTypes.length) {
+            elementTypes = Arrays.copyOf(elementTypes, depth * 2);
+            remaining = Arrays.copyOf(remaining, depth * 2);
+        }
+        elementTypes[depth] = elementType;
+        remaining[depth] = size;
+        depth++;
+    }
+
+}
@@ -0,0 +1,57 @@
+package org.machinemc.nbt.io;
+
+import java.io.UTFDataFormatException;
+import java.util.Arrays;
+
+// bounded cache of decoded strings keyed on their encoded bytes, repeated compound keys
+// and short values decode to one instance; entries are immutable and replaced as a whole,
+// so the racy reads and writes of the slots are safe without locking
+public final class NBTStringTable {
+
+    private static final NBTStringTable SHARED = new NBTStringTable(4096, 32);
+
+    private final Entry[] entries;
+    private final int mask;
+    private final int maxLength;
+
+    public NBTStringTable(int capacity, int maxLength) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive");
+        if (maxLength < 0) throw new IllegalArgumentException("Maximum length can not be negative");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        entries = new Entry[size];
+        mask = size - 1;
+        this.maxLength = maxLength;
+    }
+
+    public static NBTStringTable shared() {
+        return SHARED;
+    }
+
+    public String get(byte[] bytes, int offset, int length) throws UTFDataFormatException {
+        if (length > maxLength) return ModifiedUTF8.decode(bytes, offset, length);
+        int hash = hash(bytes, offset, length);
+        int index = hash & mask;
+        Entry entry = entries[index];
+        if (entry != null && entry.hash == hash && Arrays.equals(entry.bytes, 0, entry.bytes.length, bytes, offset, offset + length))
+            return entry.value;
+        String value = ModifiedUTF8.decode(bytes, offset, length);
+        entries[index] = new Entry(hash, Arrays.copyOfRange(bytes, offset, offset + length), value);
+        return value;
+    }
+
+    public void clear() {
+        Arrays.fill(entries, null);
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = length;
+        for (int i = offset; i < offset + length; i++)
+            hash = 31 * hash + bytes[i];
+        return hash ^ hash >>> 16;
+    }
+
+    private record Entry(int hash, byte[] bytes, String value) {
+    }
+
+}
@@ -1,10 +1,22 @@
 package org.machinemc.nbt;
 
 import org.junit.jupiter.api.Test;
+import org.machinemc.nbt.io.NBTInputStream;
+import org.machinemc.nbt.io.NBTOutputStream;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 public class NBTReaderTest {
@@ -79,6 +91,85 @@ public class NBTReaderTest {
         }
     }
 
+    @Test
+    public void byteBuffers() throws IOException {
+        URL resource = getResource("bigtest.nbt");
+        byte[] bytes;
+        try (InputStream stream = resource.openStream()) {
+            bytes = stream.readAllBytes();
+        }
+        NBTCompound expected = NBTCompound.readRootCompound(new ByteArrayInputStream(bytes));
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+        assert NBTCompound.readRootCompound(direct).equals(expected);
+        assert direct.position() == 0;
+        assert NBTCompound.readRootCompound(ByteBuffer.wrap(bytes)).equals(expected);
+    }
+
+    @Test
+    public void serializedSize() throws IOException {
+        URL resource = getResource("bigtest.nbt");
+        try (InputStream stream = resource.openStream()) {
+            NBTCompound compound = NBTCompound.readRootCompound(stream);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            compound.write(output);
+            assert compound.serializedSize() == output.size();
+            output.reset();
+            compound.writeRoot(output, "Level");
+            assert compound.serializedRootSize("Level") == output.size();
+            for (Map.Entry<String, NBT<?>> entry : compound) {
+                output.reset();
+                entry.getValue().write(output);
+                assert entry.getValue().serializedSize() == output.size() : entry.getKey();
+            }
+        }
+    }
+
+    @Test
+    public void mappedFile() throws IOException, URISyntaxException {
+        File file = new File(getResource("hello_world.nbt").toURI());
+        NBTCompound compound = NBTCompound.readMappedFile(file, true);
+        assert compound.getValue("name", "foo").equals("Bananrama");
+        assert NBTCompound.readFromFile(file, true).equals(compound);
+    }
+
+    @Test
+    public void byteBufferTargets() throws IOException {
+        NBTCompound compound;
+        try (InputStream stream = getResource("bigtest.nbt").openStream()) {
+            compound = NBTCompound.readRootCompound(stream);
+        }
+        int size = compound.serializedSize();
+        for (ByteBuffer target : List.of(ByteBuffer.allocate(size), ByteBuffer.allocateDirect(size))) {
+            NBTOutputStream stream = new NBTOutputStream(target);
+            stream.writeNBT(compound);
+            stream.flush();
+            assert !target.hasRemaining();
+            assert new NBTInputStream(target.flip()).readCompound().equals(compound);
+            try {
+                new NBTOutputStream(target.clear().limit(size - 1)).writeNBT(compound);
+                assert false;
+            } catch (BufferOverflowException ignored) {
+            }
+        }
+
+        NBTOutputStream growable = new NBTOutputStream(ByteBuffer.allocateDirect(16), true);
+        growable.writeNBT(compound);
+        ByteBuffer grown = growable.getBuffer();
+        assert grown.isDirect() && grown.position() == size;
+        assert new NBTInputStream(grown.flip()).readCompound().equals(compound);
+
+        Path file = Files.createTempFile("nbt", null);
+        try {
+            try (NBTOutputStream stream = new NBTOutputStream(FileChannel.open(file, StandardOpenOption.WRITE), 64)) {
+                stream.writeNBT(compound);
+            }
+            assert Files.size(file) == size;
+            assert new NBTInputStream(Files.readAllBytes(file)).readCompound().equals(compound);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
     private static URL getResource(String name) {
         URL resource = NBTReaderTest.class.getProtectionDomain().getClassLoader().getResource(name);
         assert resource != null : '\'' + name + "' not found";
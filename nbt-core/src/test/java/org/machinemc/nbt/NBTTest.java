@@ -1,7 +1,14 @@
 package org.machinemc.nbt;
 
 import org.junit.jupiter.api.Test;
+import org.machinemc.nbt.exceptions.NBTException;
+import org.machinemc.nbt.io.NBTInputStream;
+import org.machinemc.nbt.io.NBTOutputStream;
+import org.machinemc.nbt.io.NBTStreamReader;
+import org.machinemc.nbt.io.NBTStringTable;
+import org.machinemc.nbt.visitor.NBTVisitor;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -72,6 +79,20 @@ public class NBTTest {
         assert second.<NBTList>getNBT("list").get(1).revert().equals(3);
     }
 
+    @Test
+    public void emptyLists() throws IOException {
+        // like vanilla, empty lists are written with TAG_End as their element type, whatever they were created for
+        final NBTList emptied = NBTList.ofInts(1, 2);
+        emptied.clear();
+        for (NBTList list : List.of(new NBTList(NBT.Tag.STRING), NBTList.ofInts(), emptied)) {
+            final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            list.write(stream);
+            assert Arrays.equals(stream.toByteArray(), new byte[]{0, 0, 0, 0, 0});
+            assert NBTCompound.readCompound(new ByteArrayInputStream(this.bytes(new NBTCompound(Map.of("list", list)))))
+                    .<NBTList>getNBT("list").getElementType() == NBT.Tag.END;
+        }
+    }
+
     @Test
     public void stream() throws IOException {
         final NBTCompound first = new NBTCompound();
@@ -107,6 +128,603 @@ public class NBTTest {
         assert Arrays.equals(second.getValue("ints"), new int[]{1, 2, 3});
     }
 
+    @Test
+    public void trailingData() throws IOException {
+        final NBTCompound compound = new NBTCompound();
+        compound.set("string", "hello");
+        compound.set("longs", new long[] {1, 2, 3});
+        compound.set("list", new NBTList(1, 2));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        compound.write(out);
+        compound.write(out);
+        out.write(new byte[] {7, 8, 9});
+        final ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+
+        // streams of the caller are left right after the NBT data
+        assert NBTCompound.readCompound(in).equals(compound);
+        assert NBT.Tag.COMPOUND.read(in).equals(compound);
+        assert in.available() == 3 && in.read() == 7;
+
+        // streams that support mark and reset are read ahead and moved back by release
+        final BufferedInputStream buffered = new BufferedInputStream(new ByteArrayInputStream(out.toByteArray()), 16);
+        assert NBTCompound.readCompound(buffered).equals(compound);
+        final NBTInputStream stream = new NBTInputStream(buffered, 8, true);
+        assert stream.readCompound().equals(compound);
+        stream.release();
+        assert buffered.read() == 7 && buffered.read() == 8;
+    }
+
+    @Test
+    public void arraySource() throws IOException {
+        final NBTCompound compound = new NBTCompound();
+        compound.set("int", 123456789);
+        compound.set("long", -987654321012L);
+        compound.set("short", (short) -2);
+        compound.set("string", "hello");
+        final byte[] bytes = this.bytes(compound);
+        final NBTInputStream stream = new NBTInputStream(bytes);
+        assert stream.readCompound().equals(compound);
+        assert stream.read() == -1;
+    }
+
+    @Test
+    public void lazy() throws IOException {
+        final NBTCompound compound = new NBTCompound();
+        compound.set("hello", "there");
+        compound.set("test", 10);
+        compound.set("longs", new long[]{1, 2, 3});
+        final NBTCompound nested = new NBTCompound();
+        nested.set("value", 0.5f);
+        compound.set("nested", nested);
+        final byte[] bytes = this.bytes(compound);
+
+        final NBTInputStream stream = new NBTInputStream(bytes);
+        stream.setLazy(true);
+        final NBTCompound lazy = stream.readCompound();
+        assert lazy instanceof LazyNBTCompound;
+        assert lazy.size() == 4;
+        assert lazy.containsKey("longs");
+        assert lazy.containsTag(NBT.Tag.LONG_ARRAY);
+        assert Arrays.equals(this.bytes(lazy), bytes);
+        // nothing was removed, the original bytes are still written as they are
+        assert lazy.remove("missing") == null;
+        assert Arrays.equals(this.bytes(lazy), bytes);
+        assert lazy.getValue("test").equals(10);
+        assert lazy.<NBTCompound>getNBT("nested").getValue("value").equals(0.5f);
+        assert lazy.equals(compound);
+
+        lazy.set("test", 11);
+        lazy.remove("hello");
+        final NBTCompound read = NBTCompound.readCompound(new ByteArrayInputStream(this.bytes(lazy)));
+        assert read.size() == 3;
+        assert read.getValue("test").equals(11);
+        assert Arrays.equals(read.getValue("longs"), new long[]{1, 2, 3});
+        assert read.equals(lazy);
+    }
+
+    @Test
+    public void strings() throws IOException {
+        final String value = "ÅÄÖ \0 \uD83D\uDE00 ascii";
+        final NBTCompound compound = new NBTCompound();
+        compound.set("string", value);
+        final byte[] bytes = this.bytes(compound);
+        // 3 * 2 bytes, null as 2 bytes, surrogates as 2 * 3 bytes and 8 ASCII characters
+        assert bytes[1 + 2 + "string".length()] == 0;
+        assert bytes[1 + 2 + "string".length() + 1] == 6 + 2 + 6 + 8;
+        final NBTCompound read = NBTCompound.readCompound(new ByteArrayInputStream(bytes));
+        assert read.getValue("string").equals(value);
+        assert new NBTInputStream(bytes).readCompound().getValue("string").equals(value);
+    }
+
+    @Test
+    public void interning() throws IOException {
+        final NBTCompound compound = new NBTCompound();
+        compound.set("id", "minecraft:air");
+        final byte[] bytes = this.bytes(compound);
+        final NBTStringTable table = new NBTStringTable(16, 32);
+        final String[] keys = new String[2];
+        final String[] values = new String[2];
+        for (int i = 0; i < 2; i++) {
+            final NBTInputStream stream = new NBTInputStream(bytes);
+            stream.setKeyTable(table);
+            stream.setValueTable(table);
+            final NBTCompound read = stream.readCompound();
+            keys[i] = read.keySet().iterator().next();
+            values[i] = read.getValue("id");
+        }
+        assert keys[0].equals("id") && keys[0] == keys[1];
+        assert values[0].equals("minecraft:air") && values[0] == values[1];
+    }
+
+    @Test
+    public void compressed() throws IOException {
+        final NBTCompound compound = new NBTCompound();
+        final long[] longs = new long[5000];
+        for (int i = 0; i < longs.length; i++) longs[i] = (long) i * i * 31;
+        final byte[] bytes = new byte[20000];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) i;
+        compound.set("longs", longs);
+        compound.set("bytes", bytes);
+        compound.set("string", "x".repeat(10000));
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        compound.writeRoot(new NBTOutputStream(stream, true));
+        final NBTCompound read = NBTCompound.readRootCompound(new ByteArrayInputStream(stream.toByteArray()));
+        assert read.equals(compound);
+    }
+
+    @Test
+    public void cachedEncoding() throws IOException {
+        final NBTCompound compound = new NBTCompound();
+        final NBTCompound nested = new NBTCompound();
+        final NBTList list = new NBTList();
+        list.add(nested);
+        compound.set("list", list);
+        compound.set("ints", new NBTIntArray(1, 2, 3));
+        compound.set("name", "item");
+        compound.setCacheEncoding(true);
+        assert Arrays.equals(this.bytes(compound), this.bytes(compound.clone()));
+
+        nested.set("count", 64);
+        assert Arrays.equals(this.bytes(compound), this.bytes(compound.clone()));
+        compound.<NBTIntArray>getNBT("ints").set(1, 5);
+        assert Arrays.equals(this.bytes(compound), this.bytes(compound.clone()));
+        list.listView().subList(0, 1).clear();
+        assert Arrays.equals(this.bytes(compound), this.bytes(compound.clone()));
+        compound.keySet().remove("name");
+        assert Arrays.equals(this.bytes(compound), this.bytes(compound.clone()));
+        compound.entrySet().iterator().next().setValue(new NBTString("replaced"));
+        assert Arrays.equals(this.bytes(compound), this.bytes(compound.clone()));
+        assert compound.serializedSize() == this.bytes(compound).length;
+
+        // arrays are copied when they are wrapped, changing the original does not change the written bytes
+        final long[] longs = {1, 2};
+        compound.set("longs", new NBTLongArray(longs));
+        compound.set("converted", longs);
+        final byte[] written = this.bytes(compound);
+        longs[0] = 7;
+        assert Arrays.equals(this.bytes(compound), written) && Arrays.equals(written, this.bytes(compound.clone()));
+        assert ((NBTLongArray) new NBTInputStream(written).readCompound().getNBT("longs")).get(0) == 1;
+    }
+
+    @Test
+    public void canonical() throws IOException {
+        final NBTCompound first = new NBTCompound();
+        final NBTCompound second = new NBTCompound(new HashMap<>(1024));
+        for (int i = 0; i < 100; i++) {
+            first.set("key" + i, new NBTCompound(Map.of("b", Float.NaN, "a", i)));
+            second.set("key" + (99 - i), new NBTCompound(Map.of("a", 99 - i, "b", Float.intBitsToFloat(0x7fc00001))));
+        }
+        final byte[] bytes = this.canonicalBytes(first);
+        assert Arrays.equals(bytes, this.canonicalBytes(second));
+
+        final NBTInputStream lazy = new NBTInputStream(bytes);
+        lazy.setLazy(true);
+        assert Arrays.equals(bytes, this.canonicalBytes(lazy.readRootCompound()));
+
+        final NBTStreamReader reader = new NBTStreamReader(new ByteArrayInputStream(bytes));
+        assert reader.nextToken() == NBTStreamReader.Token.START_COMPOUND;
+        int count = 0;
+        String previous = "";
+        while (reader.nextToken() != NBTStreamReader.Token.END_COMPOUND) {
+            assert previous.compareTo(reader.currentName()) < 0;
+            previous = reader.currentName();
+            reader.skipValue();
+            count++;
+        }
+        assert count == 100;
+    }
+
+    private byte[] canonicalBytes(NBTCompound compound) throws IOException {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final NBTOutputStream output = new NBTOutputStream(stream, false);
+        output.setCanonical(true);
+        output.writeRootCompound(compound);
+        return stream.toByteArray();
+    }
+
+    @Test
+    public void primitiveLists() throws IOException {
+        final NBTList position = NBTList.ofDoubles(1.5, 64, -3);
+        position.setDouble(1, 65);
+        position.add(new NBTDouble(0.25));
+        position.remove(0);
+        assert position.getDouble(0) == 65 && position.getDouble(2) == 0.25;
+        assert position.listView().equals(List.of(new NBTDouble(65), new NBTDouble(-3), new NBTDouble(0.25)));
+        try {
+            position.getFloat(0);
+            assert false;
+        } catch (NBTException ignored) {
+        }
+
+        final NBTList rotation = new NBTList();
+        rotation.addFloat(90);
+        rotation.addFloat(-45);
+        assert rotation.getElementType() == NBT.Tag.FLOAT;
+
+        final NBTCompound compound = new NBTCompound();
+        compound.set("Pos", position);
+        compound.set("Rotation", rotation);
+        compound.set("Ids", List.of((short) 1, (short) 2));
+        final NBTCompound read = new NBTInputStream(this.bytes(compound)).readCompound();
+        assert read.equals(compound);
+        assert read.<NBTList>getNBT("Pos").getDouble(2) == 0.25;
+        assert read.<NBTList>getNBT("Rotation").getFloat(1) == -45;
+        assert read.<NBTList>getNBT("Ids").getShort(1) == 2;
+        assert read.serializedSize() == this.bytes(read).length;
+
+        // other implementations with a numeric tag are stored by their value
+        final NBTList ints = new NBTList();
+        ints.add(new NBT<Integer>() {
+            @Override
+            public Tag tag() {
+                return Tag.INT;
+            }
+
+            @Override
+            public Integer revert() {
+                return 42;
+            }
+
+            @Override
+            public void accept(NBTVisitor visitor) {
+            }
+
+            @Override
+            public NBT<Integer> clone() {
+                return this;
+            }
+
+            @Override
+            public void write(NBTOutputStream stream) throws IOException {
+                stream.writeInt(42);
+            }
+        });
+        ints.add(new NBTInt(7));
+        ints.set(1, ints.get(0));
+        assert ints.getElementType() == NBT.Tag.INT && ints.getInt(0) == 42 && ints.getInt(1) == 42;
+    }
+
+    @Test
+    public void compactStorage() throws IOException {
+        final NBTCompound small = new NBTCompound();
+        final NBTCompound large = new NBTCompound(64);
+        for (int i = 0; i < 20; i++) {
+            small.set("key" + i, i);
+            large.set("key" + i, i);
+        }
+        small.set("key3", 30);
+        large.set("key3", 30);
+        assert small.equals(large) && small.hashCode() == large.hashCode();
+
+        final NBTCompound ordered = new NBTCompound();
+        for (String key : List.of("z", "a", "m", "b"))
+            ordered.set(key, key);
+        ordered.remove("a");
+        assert new ArrayList<>(ordered.keySet()).equals(List.of("z", "m", "b"));
+        final Iterator<Map.Entry<String, NBT<?>>> iterator = ordered.iterator();
+        iterator.next().setValue(new NBTString("last"));
+        iterator.next();
+        iterator.remove();
+        assert ordered.size() == 2 && ordered.getValue("z").equals("last") && !ordered.containsKey("m");
+
+        final NBTCompound read = new NBTInputStream(this.bytes(small)).readCompound();
+        assert read.equals(small) && read.size() == 20;
+        assert new NBTInputStream(this.bytes(ordered)).readCompound().keySet().equals(Set.of("z", "b"));
+    }
+
+    @Test
+    public void shapes() {
+        final List<NBTCompound> compounds = new ArrayList<>();
+        for (int n = 0; n < 3; n++) {
+            final NBTCompound compound = new NBTCompound();
+            for (int i = 0; i < 70; i++) {
+                compound.set("key" + i, i * n);
+                assert compound.getValue("key" + i).equals(i * n);
+                assert compound.getValue("key" + (i / 2)).equals(i / 2 * n);
+            }
+            compounds.add(compound);
+        }
+        final NBTCompound compound = compounds.get(1);
+        compound.remove("key30");
+        compound.remove("key69");
+        compound.remove("key0");
+        assert compound.size() == 67 && !compound.containsKey("key30");
+        final NBTCompound shared = new NBTCompound();
+        for (int i = 0; i < 40; i++) shared.set("key" + i, i * 2);
+        shared.remove("key1");
+        final List<String> keys = new ArrayList<>(shared.keySet());
+        assert keys.size() == 39 && keys.get(0).equals("key0") && keys.get(1).equals("key2");
+        for (String key : keys)
+            assert shared.getValue(key).equals(Integer.parseInt(key.substring(3)) * 2);
+        assert shared.equals(new NBTCompound(shared.revert()));
+    }
+
+    @Test
+    public void conversion() {
+        assert NBT.convert(5) == NBT.convert(5) && NBT.convert((byte) -7) == NBTByte.valueOf((byte) -7);
+        assert NBT.convert(true) == NBTByte.valueOf((byte) 1) && NBT.convert(1.0) == NBTDouble.valueOf(1);
+        assert NBTInt.valueOf(1 << 20).equals(new NBTInt(1 << 20)) && NBTFloat.valueOf(-0f).equals(NBTFloat.valueOf(0f));
+        assert NBT.convert(new ArrayList<>()) instanceof NBTList && NBT.convert(new TreeMap<>()) instanceof NBTCompound;
+        assert NBT.convert(new long[] {1}) instanceof NBTLongArray && NBT.convert(new Object()) == null;
+        assert NBT.Tag.fromID(10) == NBT.Tag.COMPOUND;
+        try {
+            NBT.Tag.fromID(13);
+            assert false;
+        } catch (NBTException ignored) {
+        }
+    }
+
+    @Test
+    public void frozen() throws IOException {
+        final NBTCompound compound = new NBTCompound();
+        final NBTCompound child = new NBTCompound();
+        child.set("ints", new int[] {1, 2});
+        compound.set("child", child);
+        compound.set("list", new NBTList(new NBTCompound(), new NBTCompound()));
+        compound.set("numbers", new NBTList(1L, 2L));
+        final int hash = compound.hashCode();
+        final byte[] bytes = this.bytes(compound);
+
+        assert compound.freeze(true) == compound && compound.isFrozen() && child.isFrozen();
+        assert compound.clone() == compound && compound.hashCode() == hash;
+        assert compound.serializedSize() == bytes.length && Arrays.equals(this.bytes(compound), bytes);
+        final NBTList list = compound.getNBT("list");
+        final NBTIntArray ints = child.getNBT("ints");
+        final List<Runnable> mutations = List.of(
+                () -> compound.set("key", 1),
+                () -> compound.setInt("key", 1),
+                () -> compound.remove("child"),
+                () -> compound.keySet().clear(),
+                () -> compound.iterator().next().setValue(new NBTInt(1)),
+                () -> child.clear(),
+                () -> list.add(new NBTCompound()),
+                () -> ((NBTCompound) list.get(0)).set("key", 1),
+                () -> ((NBTList) compound.getNBT("numbers")).setLong(0, 3),
+                () -> ints.set(0, 5));
+        for (Runnable mutation : mutations) {
+            try {
+                mutation.run();
+                assert false;
+            } catch (UnsupportedOperationException ignored) {
+            }
+        }
+        assert compound.equals(new NBTInputStream(bytes).readCompound()) && ints.get(0) == 1;
+    }
+
+    @Test
+    public void frozenViewsAndSharedValues() {
+        final NBTCompound shared = new NBTCompound();
+        shared.set("value", 1);
+        final NBTCompound other = new NBTCompound();
+        other.set("shared", shared);
+        final NBTList list = new NBTList(1, 2);
+        final NBTIntArray ints = new NBTIntArray(1, 2);
+        final NBTCompound compound = new NBTCompound();
+        compound.set("shared", shared);
+        compound.set("view", shared.unmodifiableView());
+        compound.set("list", list.unmodifiableView());
+        compound.set("ints", ints.unmodifiableView());
+
+        // views and values that other compounds or lists hold are replaced with frozen copies
+        assert compound.freeze() == compound;
+        assert !shared.isFrozen() && !other.isFrozen() && !list.isFrozen() && !ints.isFrozen();
+        assert compound.<NBTCompound>getNBT("shared").isFrozen() && compound.<NBTCompound>getNBT("view").isFrozen();
+        assert compound.<NBTList>getNBT("list").isFrozen() && compound.<NBTIntArray>getNBT("ints").isFrozen();
+        shared.set("value", 2);
+        list.add(new NBTInt(3));
+        ints.set(0, 5);
+        assert compound.<NBTCompound>getNBT("shared").getValue("value").equals(1);
+        assert compound.<NBTCompound>getNBT("view").getValue("value").equals(1);
+        assert compound.<NBTList>getNBT("list").size() == 2;
+        assert compound.<NBTIntArray>getNBT("ints").get(0) == 1;
+        assert other.<NBTCompound>getNBT("shared") == shared;
+
+        // values that are only held by the frozen compound are frozen in place
+        final NBTCompound owned = new NBTCompound();
+        final NBTCompound parent = new NBTCompound();
+        parent.set("owned", owned);
+        other.remove("shared");
+        parent.set("shared", shared);
+        parent.freeze();
+        assert owned.isFrozen() && shared.isFrozen() && parent.getNBT("owned") == owned;
+    }
+
+    @Test
+    public void persistent() throws IOException {
+        PersistentNBTCompound compound = PersistentNBTCompound.empty();
+        final NBTCompound expected = new NBTCompound();
+        for (int i = 0; i < 2000; i++) {
+            compound = compound.with("key" + i, i);
+            expected.set("key" + i, i);
+        }
+        // colliding hashes
+        compound = compound.with("Aa", "first").with("BB", "second");
+        expected.set("Aa", "first");
+        expected.set("BB", "second");
+        final PersistentNBTCompound snapshot = compound;
+        compound = compound.with("key5", "changed").without("key6").without("Aa");
+        assert snapshot.equals(expected) && expected.equals(snapshot) && snapshot.hashCode() == expected.hashCode();
+        assert snapshot.getInt("key5") == 5 && snapshot.getValue("BB").equals("second") && snapshot.size() == 2002;
+        assert compound.getValue("key5").equals("changed") && !compound.containsKey("key6") && compound.size() == 2000;
+        assert compound.getValue("BB").equals("second") && !compound.containsKey("Aa");
+        assert snapshot.clone() == snapshot && snapshot.serializedSize() == expected.serializedSize();
+        assert new NBTInputStream(this.bytes(snapshot)).readCompound().equals(expected);
+        assert PersistentNBTCompound.copyOf(expected).equals(snapshot);
+        try {
+            snapshot.set("key", 1);
+            assert false;
+        } catch (UnsupportedOperationException ignored) {
+        }
+
+        PersistentNBTList list = PersistentNBTList.empty();
+        final NBTList expectedList = new NBTList();
+        for (int i = 0; i < 1100; i++) {
+            list = list.append(i);
+            expectedList.addInt(i);
+        }
+        final PersistentNBTList full = list.with(7, 70);
+        expectedList.setInt(7, 70);
+        for (int i = 0; i < 1060; i++)
+            list = list.withoutLast();
+        assert full.equals(expectedList) && full.hashCode() == expectedList.hashCode() && full.getInt(7) == 70;
+        assert list.size() == 40 && list.getInt(39) == 39 && list.getInt(7) == 7;
+        assert list.hashCode() == new NBTList(list.listView()).hashCode();
+        assert full.serializedSize() == expectedList.serializedSize();
+        final NBTCompound wrapper = new NBTCompound();
+        wrapper.set("list", full);
+        assert new NBTInputStream(this.bytes(wrapper)).readCompound().getNBT("list").equals(expectedList);
+    }
+
+    @Test
+    public void persistentSnapshot() {
+        final NBTCompound live = new NBTCompound();
+        final NBTCompound child = new NBTCompound();
+        child.set("count", 1);
+        live.set("child", child);
+        live.set("list", new NBTList(new NBTCompound()));
+        live.set("ints", new int[] {1, 2});
+        final PersistentNBTCompound snapshot = PersistentNBTCompound.copyOf(live);
+        final PersistentNBTList list = PersistentNBTList.empty().append(child);
+
+        // the source tree stays mutable and the snapshot does not see its changes
+        child.set("count", 2);
+        ((NBTList) live.getNBT("list")).addValue(new NBTCompound());
+        ((NBTIntArray) live.getNBT("ints")).set(0, 5);
+        assert !child.isFrozen() && !live.isFrozen();
+        assert ((NBTCompound) snapshot.getNBT("child")).getInt("count") == 1;
+        assert ((NBTList) snapshot.getNBT("list")).size() == 1 && ((NBTIntArray) snapshot.getNBT("ints")).get(0) == 1;
+        assert ((NBTCompound) list.get(0)).getInt("count") == 1;
+        final NBTCompound frozen = new NBTCompound().freeze();
+        assert PersistentNBTCompound.empty().with("frozen", frozen).getNBT("frozen") == frozen;
+    }
+
+    @Test
+    public void deepClone() throws IOException {
+        final NBTCompound original = new NBTCompound();
+        final NBTCompound item = new NBTCompound();
+        item.set("count", 1);
+        item.set("tags", new NBTList("a"));
+        original.set("item", item);
+        original.set("items", new NBTList(item.clone()));
+        original.set("bytes", new byte[] {1});
+        original.set("name", "player");
+
+        final NBTCompound copy = original.clone();
+        assert copy.equals(original);
+        ((NBTCompound) copy.getNBT("item")).set("count", 2);
+        ((NBTList) ((NBTCompound) copy.getNBT("item")).getNBT("tags")).add(new NBTString("b"));
+        ((NBTCompound) ((NBTList) copy.getNBT("items")).get(0)).set("count", 3);
+        ((NBTByteArray) copy.getNBT("bytes")).set(0, (byte) 2);
+        assert item.getInt("count") == 1 && ((NBTList) item.getNBT("tags")).size() == 1;
+        assert ((NBTCompound) ((NBTList) original.getNBT("items")).get(0)).getInt("count") == 1;
+        assert ((NBTByteArray) original.getNBT("bytes")).get(0) == 1;
+
+        final byte[] bytes = this.bytes(original);
+        original.setCacheEncoding(true);
+        assert Arrays.equals(this.bytes(original), bytes);
+        final NBTCompound held = original.getNBT("item");
+        final NBTCompound snapshot = original.clone();
+        assert snapshot.equals(original);
+        ((NBTCompound) snapshot.getNBT("item")).set("count", 5);
+        held.set("count", 6);
+        ((NBTByteArray) original.getNBT("bytes")).set(0, (byte) 7);
+        original.remove("name");
+        assert ((NBTCompound) snapshot.getNBT("item")).getInt("count") == 5 && snapshot.getValue("name").equals("player");
+        assert ((NBTByteArray) snapshot.getNBT("bytes")).get(0) == 1;
+        assert ((NBTCompound) original.getNBT("item")).getInt("count") == 6;
+        assert !Arrays.equals(this.bytes(original), bytes);
+        assert new NBTInputStream(this.bytes(original)).readCompound().equals(original);
+    }
+
+    @Test
+    public void unboxedScalars() throws IOException {
+        final NBTCompound compound = new NBTCompound();
+        compound.setByte("byte", (byte) -1);
+        compound.setShort("short", (short) 300);
+        compound.setInt("int", 1 << 20);
+        compound.setLong("long", Long.MIN_VALUE);
+        compound.setFloat("float", -2.5f);
+        compound.setDouble("double", 0.5);
+        compound.set("string", "value");
+        compound.set("boxed", 7);
+        assert compound.getByte("byte") == -1 && compound.getShort("short") == 300;
+        assert compound.getInt("int") == 1 << 20 && compound.getLong("long") == Long.MIN_VALUE;
+        assert compound.getFloat("float") == -2.5f && compound.getDouble("double") == 0.5;
+        assert compound.getInt("boxed") == 7 && compound.getNBT("boxed").equals(new NBTInt(7));
+        assert compound.getNBT("long").equals(new NBTLong(Long.MIN_VALUE));
+        assert compound.getInt("missing", 3) == 3 && compound.getDouble("double", 1) == 0.5;
+        try {
+            compound.getInt("long");
+            assert false;
+        } catch (NBTException ignored) {
+        }
+
+        final byte[] bytes = this.bytes(compound);
+        assert compound.serializedSize() == bytes.length;
+        final NBTCompound read = new NBTInputStream(bytes).readCompound();
+        assert read.equals(compound) && read.getShort("short") == 300;
+        assert Arrays.equals(this.bytes(read), bytes);
+
+        compound.remove("short");
+        compound.setInt("int", 5);
+        assert compound.getInt("int") == 5 && compound.getDouble("double") == 0.5;
+        assert new ArrayList<>(compound.keySet()).equals(List.of("byte", "int", "long", "float", "double", "string", "boxed"));
+        assert compound.unmodifiableView().getInt("int") == 5;
+    }
+
+    @Test
+    public void structuralHash() throws IOException {
+        final NBTCompound compound = new NBTCompound();
+        compound.setInt("count", 1);
+        compound.setFloat("zero", 0f);
+        compound.set("tags", new NBTList("a", "b"));
+        compound.set("child", new NBTCompound(Map.of("ints", new int[] {1, 2})));
+        final NBTCompound other = new NBTCompound();
+        other.set("child", ((NBTCompound) compound.getNBT("child")).clone());
+        other.set("tags", new NBTList("a", "b"));
+        other.set("zero", -0f);
+        other.set("count", 1);
+
+        final long hash = compound.structuralHash();
+        assert other.equals(compound) && other.structuralHash() == hash && other.hashCode() == compound.hashCode();
+        assert PersistentNBTCompound.copyOf(compound).structuralHash() == hash;
+        assert compound.clone().freeze().structuralHash() == hash;
+        assert new NBTInputStream(this.bytes(compound)).readCompound().structuralHash() == hash;
+        final NBTIntArray ints = ((NBTCompound) compound.getNBT("child")).getNBT("ints");
+        ints.set(0, 5);
+        assert compound.structuralHash() != hash && !compound.equals(other);
+        ints.set(0, 1);
+        assert compound.structuralHash() == hash && compound.equals(other);
+        ((NBTList) compound.getNBT("tags")).add(new NBTString("c"));
+        assert compound.structuralHash() != hash;
+
+        final NBTCompound copy = other.clone();
+        assert copy.structuralHash() == hash;
+        ((NBTCompound) copy.getNBT("child")).set("key", 1);
+        assert copy.structuralHash() != hash && other.structuralHash() == hash;
+
+        // arrays are copied when they are wrapped, so changes to them cannot leave a stale hash
+        final int[] array = {1, 2};
+        final NBTCompound wrapper = new NBTCompound();
+        wrapper.set("converted", array);
+        wrapper.set("wrapped", new NBTIntArray(array));
+        wrapper.set("list", NBTList.ofInts(array));
+        final long wrapperHash = wrapper.structuralHash();
+        final int wrapperCode = wrapper.hashCode();
+        array[0] = 99;
+        assert wrapper.structuralHash() == wrapperHash && wrapper.hashCode() == wrapperCode;
+        assert ((NBTIntArray) wrapper.getNBT("wrapped")).get(0) == 1 && ((NBTList) wrapper.getNBT("list")).getInt(0) == 1;
+
+        final NBTList list = new NBTList();
+        list.addInt(1);
+        list.addInt(2);
+        final PersistentNBTList persistent = PersistentNBTList.empty().append(1).append(2);
+        assert list.structuralHash() == persistent.structuralHash() && list.equals(persistent);
+        assert list.structuralHash() == new NBTList(new NBTInt(1), new NBTInt(2)).structuralHash();
+        assert list.structuralHash() != persistent.with(0, 2).structuralHash();
+        assert list.structuralHash() == persistent.append(3).withoutLast().structuralHash();
+    }
+
     @Test
     public void binary() throws IOException {
         final NBTCompound compound = new NBTCompound();
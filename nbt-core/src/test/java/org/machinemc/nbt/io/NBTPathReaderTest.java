@@ -0,0 +1,36 @@
+package org.machinemc.nbt.io;
+
+import org.junit.jupiter.api.Test;
+import org.machinemc.nbt.NBT;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+
+public class NBTPathReaderTest {
+
+    @Test
+    public void paths() throws IOException {
+        URL resource = NBTPathReaderTest.class.getProtectionDomain().getClassLoader().getResource("bigtest.nbt");
+        assert resource != null;
+        final NBTPathReader reader = new NBTPathReader(
+                "nested compound test.egg.name",
+                "nested compound test.ham",
+                "nested compound test.ham.value",
+                "listTest (long)",
+                "missing.key"
+        );
+        try (InputStream stream = resource.openStream()) {
+            final Map<String, NBT<?>> values = reader.read(stream);
+            assert values.size() == 4 : values;
+            assert values.get("nested compound test.egg.name").revert().equals("Eggbert");
+            assert values.get("nested compound test.ham").tag() == NBT.Tag.COMPOUND;
+            assert values.get("nested compound test.ham.value").revert().equals(0.75f);
+            assert values.get("listTest (long)").revert().equals(List.of(11L, 12L, 13L, 14L, 15L));
+            assert !values.containsKey("missing.key");
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package org.machinemc.nbt.io;
+
+import org.junit.jupiter.api.Test;
+import org.machinemc.nbt.NBT;
+import org.machinemc.nbt.NBTCompound;
+import org.machinemc.nbt.NBTList;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.List;
+
+public class NBTStreamReaderTest {
+
+    @Test
+    public void tokens() throws IOException {
+        final NBTCompound compound = new NBTCompound();
+        compound.set("list", new NBTList(1, 2, 3));
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        compound.writeRoot(stream, "root");
+
+        final NBTStreamReader reader = new NBTStreamReader(new ByteArrayInputStream(stream.toByteArray()));
+        assert reader.nextToken() == NBTStreamReader.Token.START_COMPOUND;
+        assert "root".equals(reader.currentName());
+        assert reader.nextToken() == NBTStreamReader.Token.START_LIST;
+        assert "list".equals(reader.currentName());
+        assert reader.listElementType() == NBT.Tag.INT;
+        assert reader.listSize() == 3;
+        int sum = 0;
+        while (reader.nextToken() == NBTStreamReader.Token.VALUE)
+            sum += reader.intValue();
+        assert sum == 6;
+        assert reader.currentToken() == NBTStreamReader.Token.END_LIST;
+        assert reader.nextToken() == NBTStreamReader.Token.END_COMPOUND;
+        assert reader.nextToken() == NBTStreamReader.Token.END_DOCUMENT;
+    }
+
+    @Test
+    public void skipping() throws IOException {
+        URL resource = NBTStreamReaderTest.class.getProtectionDomain().getClassLoader().getResource("bigtest.nbt");
+        assert resource != null;
+        try (InputStream stream = resource.openStream()) {
+            final NBTStreamReader reader = new NBTStreamReader(stream);
+            assert reader.nextToken() == NBTStreamReader.Token.START_COMPOUND;
+            Object longs = null;
+            Integer intTest = null;
+            NBTStreamReader.Token token;
+            while ((token = reader.nextToken()) != NBTStreamReader.Token.END_COMPOUND) {
+                if ("intTest".equals(reader.currentName())) intTest = reader.intValue();
+                else if ("listTest (long)".equals(reader.currentName())) longs = reader.readNBT().revert();
+                else if (token != NBTStreamReader.Token.VALUE) reader.skipValue();
+            }
+            assert reader.depth() == 0;
+            assert intTest == 2147483647;
+            assert List.of(11L, 12L, 13L, 14L, 15L).equals(longs);
+            assert reader.nextToken() == NBTStreamReader.Token.END_DOCUMENT;
+        }
+    }
+
+}
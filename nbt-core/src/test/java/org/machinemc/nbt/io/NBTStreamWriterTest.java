@@ -0,0 +1,86 @@
+package org.machinemc.nbt.io;
+
+import org.junit.jupiter.api.Test;
+import org.machinemc.nbt.NBT;
+import org.machinemc.nbt.NBTCompound;
+import org.machinemc.nbt.NBTList;
+import org.machinemc.nbt.exceptions.NBTException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+public class NBTStreamWriterTest {
+
+    @Test
+    public void document() throws IOException {
+        final NBTCompound expected = new NBTCompound();
+        expected.set("name", "chunk");
+        expected.set("heights", new long[] {1, 2, 3});
+        final NBTList sections = new NBTList();
+        for (int y = 0; y < 2; y++) {
+            final NBTCompound section = new NBTCompound();
+            section.set("y", (byte) y);
+            section.set("palette", new NBTList("stone", "air"));
+            sections.add(section);
+        }
+        expected.set("sections", sections);
+        expected.set("empty", new NBTList());
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (NBTStreamWriter writer = new NBTStreamWriter(stream)) {
+            writer.beginCompound("root");
+            writer.writeString("name", "chunk");
+            writer.writeLongArray("heights", new long[] {1, 2, 3});
+            writer.beginList("sections", NBT.Tag.COMPOUND, 2);
+            for (int y = 0; y < 2; y++) {
+                writer.beginCompound();
+                writer.writeByte("y", (byte) y);
+                writer.writeNBT("palette", new NBTList("stone", "air"));
+                writer.end();
+            }
+            writer.end();
+            writer.beginList("empty", NBT.Tag.END, 0);
+            writer.end();
+            writer.end();
+        }
+
+        final NBTInputStream in = new NBTInputStream(new ByteArrayInputStream(stream.toByteArray()));
+        assert in.readTag() == NBT.Tag.COMPOUND;
+        assert in.readStringValue().equals("root");
+        assert in.readCompound().equals(expected);
+    }
+
+    @Test
+    public void validation() throws IOException {
+        final NBTStreamWriter writer = new NBTStreamWriter(new ByteArrayOutputStream());
+        writer.beginCompound();
+        assert fails(() -> writer.writeInt(1));
+        writer.beginList("list", NBT.Tag.INT, 1);
+        assert fails(() -> writer.writeInt("named", 1));
+        assert fails(() -> writer.writeLong(1));
+        assert fails(writer::end);
+        writer.writeInt(1);
+        assert fails(() -> writer.writeInt(2));
+        writer.end();
+        writer.end();
+        assert fails(writer::end);
+        assert fails(writer::beginCompound);
+    }
+
+    private static boolean fails(Action action) throws IOException {
+        try {
+            action.run();
+            return false;
+        } catch (NBTException exception) {
+            return true;
+        }
+    }
+
+    private interface Action {
+
+        void run() throws IOException;
+
+    }
+
+}
@@ -64,8 +64,8 @@ public class NBTParser {
         if (string.revert().isEmpty())
             throw MalformedNBTException.EXPECTED_VALUE.createWithContext(reader);
         return switch (string.revert()) {
-            case "true" -> new NBTByte(true);
-            case "false" -> new NBTByte(false);
+            case "true" -> NBTByte.valueOf(true);
+            case "false" -> NBTByte.valueOf(false);
             default -> string;
         };
     }
@@ -18,6 +18,11 @@ dependencyResolutionManagement {
             library("junit-api", "org.junit.jupiter:junit-jupiter-api:$junit")
             library("junit-engine", "org.junit.jupiter:junit-jupiter-engine:$junit")
             library("junit-params", "org.junit.jupiter:junit-jupiter-params:$junit")
+
+            val jmhPlugin: String by settings
+            plugin("jmh", "me.champeau.jmh").version(jmhPlugin)
+            val jmh: String by settings
+            version("jmh", jmh)
         }
 
 